@@ -6,9 +6,9 @@ package debroejm.simpleblend;
  * top and bottom color components to blend with, and returns
  * the resulting color component.
  *
- * In addition, the BlendAlgorithm interface specifies a
- * default method for blending whole 32-bit integer represented
- * colors.
+ * In addition, the BlendAlgorithm interface specifies
+ * default methods for blending whole 32-bit integer represented
+ * colors, either one at a time or in bulk over pixel arrays.
  */
 @FunctionalInterface
 public interface BlendAlgorithm {
@@ -28,6 +28,20 @@ public interface BlendAlgorithm {
         return Math.max(lower, Math.min(upper,value));
     }
 
+    /**
+     * Utility method that moves a <code>bottom</code> color component
+     * towards a <code>blended</code> component by the given top
+     * <code>alpha</code>, clamping the result between 0.0f and 1.0f.
+     *
+     * @param blended Float blended component
+     * @param bottom Float bottom component
+     * @param alpha Float top alpha
+     * @return Clamped float color
+     */
+    static float mix(float blended, float bottom, float alpha) {
+        return clamp(bottom + (blended-bottom) * alpha, 0.0f, 1.0f);
+    }
+
     /**
      * Takes two color components for a specific color Channel
      * and blends them together, returning the result.
@@ -48,20 +62,210 @@ public interface BlendAlgorithm {
      * @return Blended result
      */
     default Color blend(Color top, Color bottom) {
-        float[] topArray = top.getRGBComponents();
-        float[] bottomArray = bottom.getRGBComponents();
-        float[] resultArray = new float[4];
-        for (int i = 1; i < 4; i++) {
-            float blendVal = blend(Channel.values()[i], topArray[i], bottomArray[i]);
-            blendVal = bottomArray[i] + (blendVal-bottomArray[i]) * topArray[0];
-            resultArray[i] = clamp(blendVal, 0.0f, 1.0f);
-        }
-        resultArray[0] = bottomArray[0];
+        final int t = top.getRGB(), b = bottom.getRGB();
+        final float alpha = (t >> 24 & 0xFF) / 255.0f;
+        final float tr = (t >> 16 & 0xFF) / 255.0f, br = (b >> 16 & 0xFF) / 255.0f;
+        final float tg = (t >>  8 & 0xFF) / 255.0f, bg = (b >>  8 & 0xFF) / 255.0f;
+        final float tb = (t       & 0xFF) / 255.0f, bb = (b       & 0xFF) / 255.0f;
+        // The HSB of the result is taken from the unrounded components
         return Color.ofRGB(
-                resultArray[1],
-                resultArray[2],
-                resultArray[3],
-                resultArray[0]
+                mix(blend(Channel.RED,   tr, br), br, alpha),
+                mix(blend(Channel.GREEN, tg, bg), bg, alpha),
+                mix(blend(Channel.BLUE,  tb, bb), bb, alpha),
+                (b >> 24 & 0xFF) / 255.0f
+        );
+    }
+
+    /**
+     * Takes two 32-bit ARGB integer colors and blends them together,
+     * returning the result as a 32-bit ARGB integer color. The result
+     * matches <code>blend(Color, Color).getRGB()</code>, but no
+     * intermediate objects are created.
+     *
+     * @param top 32-bit ARGB top color
+     * @param bottom 32-bit ARGB bottom color
+     * @return 32-bit ARGB blended result
+     */
+    default int blend(int top, int bottom) {
+        final float alpha = (top >> 24 & 0xFF) / 255.0f;
+        final float tr = (top >> 16 & 0xFF) / 255.0f, br = (bottom >> 16 & 0xFF) / 255.0f;
+        final float tg = (top >>  8 & 0xFF) / 255.0f, bg = (bottom >>  8 & 0xFF) / 255.0f;
+        final float tb = (top       & 0xFF) / 255.0f, bb = (bottom       & 0xFF) / 255.0f;
+        return Color.convertColorIntFromFloat(
+                mix(blend(Channel.RED,   tr, br), br, alpha),
+                mix(blend(Channel.GREEN, tg, bg), bg, alpha),
+                mix(blend(Channel.BLUE,  tb, bb), bb, alpha),
+                (bottom >> 24 & 0xFF) / 255.0f
         );
     }
+
+    /**
+     * Blends a run of 32-bit ARGB pixels, writing the results into
+     * <code>dst</code>. Each pixel is blended exactly as
+     * {@link #blend(int, int)} would blend it.
+     *
+     * @param top Integer array of top pixel data
+     * @param topOffset Index of the first top pixel
+     * @param bottom Integer array of bottom pixel data
+     * @param bottomOffset Index of the first bottom pixel
+     * @param dst Integer array to write results to; may be <code>top</code> or <code>bottom</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param length Number of pixels to blend
+     */
+    default void blend(int[] top, int topOffset, int[] bottom, int bottomOffset, int[] dst, int dstOffset, int length) {
+        for(int i = 0; i < length; i++) {
+            dst[dstOffset+i] = blend(top[topOffset+i], bottom[bottomOffset+i]);
+        }
+    }
+
+    /**
+     * Blends a run of 32-bit ARGB pixels that share the same offset
+     * in all three arrays, writing the results into <code>dst</code>.
+     *
+     * @param top Integer array of top pixel data
+     * @param bottom Integer array of bottom pixel data
+     * @param dst Integer array to write results to; may be <code>top</code> or <code>bottom</code>
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to blend
+     */
+    default void blend(int[] top, int[] bottom, int[] dst, int offset, int length) {
+        blend(top, offset, bottom, offset, dst, offset, length);
+    }
+
+    /**
+     * Blends a rectangular region of 32-bit ARGB pixels, writing the results
+     * into <code>dst</code>. Each array is addressed by its own offset and
+     * stride, where the stride is the distance between the starts of two
+     * consecutive rows.
+     *
+     * @param top Integer array of top pixel data
+     * @param topOffset Index of the first top pixel
+     * @param topStride Row stride of the top pixel data
+     * @param bottom Integer array of bottom pixel data
+     * @param bottomOffset Index of the first bottom pixel
+     * @param bottomStride Row stride of the bottom pixel data
+     * @param dst Integer array to write results to
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    default void blend(
+            int[] top, int topOffset, int topStride,
+            int[] bottom, int bottomOffset, int bottomStride,
+            int[] dst, int dstOffset, int dstStride,
+            int width, int height
+    ) {
+        for(int y = 0; y < height; y++) {
+            blend(
+                    top, topOffset + y*topStride,
+                    bottom, bottomOffset + y*bottomStride,
+                    dst, dstOffset + y*dstStride,
+                    width
+            );
+        }
+    }
+
+    /**
+     * Takes two premultiplied 32-bit ARGB colors and composites the top color over the
+     * bottom color, returning the result as a premultiplied 32-bit ARGB color.
+     *
+     * Unlike {@link #blend(int, int)}, which keeps the bottom alpha, this composites
+     * with the source-over operator: the resulting alpha is
+     * <code>as + ab - as*ab</code>, and each resulting component is
+     * <code>cs*(1 - ab) + cb*(1 - as) + as*ab*B(cs/as, cb/ab)</code>, where
+     * <code>B</code> is this algorithm and <code>cs</code> and <code>cb</code> are the
+     * premultiplied components. Compositing a stack of layers this way needs no
+     * conversion between layers, and a fully transparent top or bottom leaves the
+     * other color unchanged. Over an opaque bottom, the result is the premultiplied
+     * form of {@link #blend(int, int)}'s result, up to rounding.
+     *
+     * @param top Premultiplied 32-bit ARGB top color
+     * @param bottom Premultiplied 32-bit ARGB bottom color
+     * @return Premultiplied 32-bit ARGB blended result
+     * @see PackedColor#premultiply(int)
+     */
+    default int blendPremultiplied(int top, int bottom) {
+        final int ta = top >>> 24, ba = bottom >>> 24;
+        if(ta == 0)
+            return bottom;
+        if(ba == 0)
+            return top;
+        final float as = PackedColor.unit(ta), ab = PackedColor.unit(ba);
+        final float ao = as + ab - as*ab;
+        final int alpha = (int)(ao * 255 + 0.5f);
+        final float tr = PackedColor.unit(top >> 16), br = PackedColor.unit(bottom >> 16);
+        final float tg = PackedColor.unit(top >>  8), bg = PackedColor.unit(bottom >>  8);
+        final float tb = PackedColor.unit(top      ), bb = PackedColor.unit(bottom      );
+        return alpha << 24
+                | composite(tr*(1.0f-ab) + br*(1.0f-as) + as*ab*blend(Channel.RED,   tr/as, br/ab), ao, alpha) << 16
+                | composite(tg*(1.0f-ab) + bg*(1.0f-as) + as*ab*blend(Channel.GREEN, tg/as, bg/ab), ao, alpha) << 8
+                | composite(tb*(1.0f-ab) + bb*(1.0f-as) + as*ab*blend(Channel.BLUE,  tb/as, bb/ab), ao, alpha);
+    }
+
+    /**
+     * Utility method that converts a composited premultiplied component to 8 bits,
+     * clamping it between 0 and the composited alpha so the result stays a valid
+     * premultiplied color.
+     *
+     * @param value Float premultiplied component
+     * @param alpha Float composited alpha
+     * @param alphaComponent 8-bit composited alpha
+     * @return 8-bit premultiplied component
+     */
+    static int composite(float value, float alpha, int alphaComponent) {
+        value = value < 0.0f ? 0.0f : (value > alpha ? alpha : value);
+        return Math.min((int)(value * 255 + 0.5f), alphaComponent);
+    }
+
+    /**
+     * Composites a run of premultiplied 32-bit ARGB pixels, writing the results into
+     * <code>dst</code>. Each pixel is composited exactly as
+     * {@link #blendPremultiplied(int, int)} would composite it, except that runs of
+     * fully transparent top pixels are copied from the bottom in bulk, or skipped
+     * entirely when <code>dst</code> is <code>bottom</code>.
+     *
+     * @param top Integer array of premultiplied top pixel data
+     * @param topOffset Index of the first top pixel
+     * @param bottom Integer array of premultiplied bottom pixel data
+     * @param bottomOffset Index of the first bottom pixel
+     * @param dst Integer array to write results to; may be <code>top</code> or <code>bottom</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param length Number of pixels to composite
+     */
+    default void blendPremultiplied(int[] top, int topOffset, int[] bottom, int bottomOffset, int[] dst, int dstOffset, int length) {
+        final boolean copy = bottom != dst || bottomOffset != dstOffset;
+        int i = 0;
+        while(i < length) {
+            final int t = top[topOffset+i];
+            if((t >>> 24) == 0) {
+                int end = i + 1;
+                while(end < length && (top[topOffset+end] >>> 24) == 0)
+                    end++;
+                if(copy)
+                    System.arraycopy(bottom, bottomOffset+i, dst, dstOffset+i, end - i);
+                i = end;
+            } else {
+                dst[dstOffset+i] = blendPremultiplied(t, bottom[bottomOffset+i]);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Blends every pixel of the <code>top</code> surface over the pixel at the same
+     * position of the <code>bottom</code> surface, writing the results into the
+     * <code>dst</code> surface. Surfaces backed by arrays of ARGB pixels are blended
+     * in place; others are blended a row at a time.
+     *
+     * @param top PixelSurface of top pixel data
+     * @param bottom PixelSurface of bottom pixel data, the same size as <code>top</code>
+     * @param dst PixelSurface to write results to, the same size as <code>top</code>;
+     *            may be <code>top</code> or <code>bottom</code>
+     */
+    default void blend(PixelSurface top, PixelSurface bottom, PixelSurface dst) {
+        top.checkSameSize(bottom);
+        top.checkSameSize(dst);
+        PixelSurface.blend(this, top, bottom, dst, 0, 0, top.getWidth(), top.getHeight());
+    }
 }
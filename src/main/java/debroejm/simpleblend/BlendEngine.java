@@ -0,0 +1,246 @@
+package debroejm.simpleblend;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Blends large pixel regions in parallel. A region is split into tiles small
+ * enough for the top, bottom and destination pixels of a tile to stay in cache
+ * together, and the tiles are blended on a ForkJoinPool using the bulk methods
+ * of any BlendAlgorithm.
+ *
+ * Every destination pixel is written by exactly one tile, and each pixel only
+ * depends on its own top and bottom pixels, so the output is the same no matter
+ * how the work is scheduled. The BlendAlgorithm must be safe to call from
+ * several threads at once, which is true for BlendType, BlendTable and ColorGraph.
+ */
+public class BlendEngine {
+
+    /**
+     * Default amount of pixels in a tile. Three int arrays of this size take
+     * 192KB, which fits in the L2 cache of most current processors.
+     */
+    public static final int DEFAULT_TILE_SIZE = 16 * 1024;
+
+    /**
+     * Default amount of pixels below which a region is blended on the calling thread.
+     */
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final int threshold;
+
+    /**
+     * Creates a new BlendEngine that runs on the common ForkJoinPool.
+     */
+    public BlendEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new BlendEngine that runs on the given <code>pool</code>.
+     *
+     * @param pool ForkJoinPool to blend tiles on
+     */
+    public BlendEngine(final ForkJoinPool pool) {
+        this(pool, DEFAULT_TILE_SIZE, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a new BlendEngine that runs on the given <code>pool</code>.
+     *
+     * @param pool ForkJoinPool to blend tiles on
+     * @param tileSize Maximum amount of pixels in a single tile
+     * @param threshold Amount of pixels below which regions are blended sequentially
+     */
+    public BlendEngine(final ForkJoinPool pool, final int tileSize, final int threshold) {
+        if(pool == null)
+            throw new NullPointerException();
+        if(tileSize < 1)
+            throw new IllegalArgumentException("Tile size must be at least one pixel");
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.threshold = threshold;
+    }
+
+    public ForkJoinPool getPool() { return pool; }
+    public int getTileSize() { return tileSize; }
+    public int getThreshold() { return threshold; }
+
+    /**
+     * Blends a run of 32-bit ARGB pixels that share the same offset in all
+     * three arrays, writing the results into <code>dst</code>.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param top Integer array of top pixel data
+     * @param bottom Integer array of bottom pixel data
+     * @param dst Integer array to write results to; may be <code>top</code> or <code>bottom</code>
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to blend
+     */
+    public void blend(
+            final BlendAlgorithm algorithm,
+            final int[] top, final int[] bottom, final int[] dst,
+            final int offset, final int length
+    ) {
+        blend(algorithm, top, offset, length, bottom, offset, length, dst, offset, length, length, 1);
+    }
+
+    /**
+     * Blends a rectangular region of 32-bit ARGB pixels, writing the results into
+     * <code>dst</code>. Each array is addressed by its own offset and stride, as in
+     * {@link BlendAlgorithm#blend(int[], int, int, int[], int, int, int[], int, int, int, int)}.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param top Integer array of top pixel data
+     * @param topOffset Index of the first top pixel
+     * @param topStride Row stride of the top pixel data
+     * @param bottom Integer array of bottom pixel data
+     * @param bottomOffset Index of the first bottom pixel
+     * @param bottomStride Row stride of the bottom pixel data
+     * @param dst Integer array to write results to
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void blend(
+            final BlendAlgorithm algorithm,
+            final int[] top, final int topOffset, final int topStride,
+            final int[] bottom, final int bottomOffset, final int bottomStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height
+    ) {
+        forEachTile(width, height, new Region(
+                algorithm,
+                top, topOffset, topStride,
+                bottom, bottomOffset, bottomStride,
+                dst, dstOffset, dstStride
+        ));
+    }
+
+    /**
+     * Blends every pixel of the <code>top</code> surface over the pixel at the same
+     * position of the <code>bottom</code> surface, writing the results into the
+     * <code>dst</code> surface, in parallel tiles.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param top PixelSurface of top pixel data
+     * @param bottom PixelSurface of bottom pixel data, the same size as <code>top</code>
+     * @param dst PixelSurface to write results to, the same size as <code>top</code>
+     * @see BlendAlgorithm#blend(PixelSurface, PixelSurface, PixelSurface)
+     */
+    public void blend(
+            final BlendAlgorithm algorithm,
+            final PixelSurface top, final PixelSurface bottom, final PixelSurface dst
+    ) {
+        top.checkSameSize(bottom);
+        top.checkSameSize(dst);
+        forEachTile(top.getWidth(), top.getHeight(),
+                (x, y, w, h) -> PixelSurface.blend(algorithm, top, bottom, dst, x, y, w, h));
+    }
+
+    /**
+     * Splits a <code>width</code> by <code>height</code> region into tiles and runs
+     * the given <code>action</code> once for every tile, in parallel if the region
+     * is larger than the threshold. Returns once every tile has been processed.
+     *
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     * @param action TileAction to run for each tile
+     */
+    public void forEachTile(final int width, final int height, final TileAction action) {
+        if((long) width * height <= threshold || pool.getParallelism() < 2) {
+            action.run(0, 0, width, height);
+        } else {
+            pool.invoke(new TileTask(action, 0, 0, width, height));
+        }
+    }
+
+    /**
+     * Work done on a single tile of a region. Tiles never overlap, and may
+     * be processed concurrently on different threads.
+     */
+    @FunctionalInterface
+    public interface TileAction {
+
+        /**
+         * Processes a single tile.
+         *
+         * @param x Column of the tile's first pixel within the region
+         * @param y Row of the tile's first pixel within the region
+         * @param width Width of the tile in pixels
+         * @param height Height of the tile in pixels
+         */
+        void run(int x, int y, int width, int height);
+    }
+
+    /**
+     * The arrays and layout of a single blend call.
+     */
+    private static final class Region implements TileAction {
+        final BlendAlgorithm algorithm;
+        final int[] top, bottom, dst;
+        final int topOffset, bottomOffset, dstOffset;
+        final int topStride, bottomStride, dstStride;
+
+        Region(
+                final BlendAlgorithm algorithm,
+                final int[] top, final int topOffset, final int topStride,
+                final int[] bottom, final int bottomOffset, final int bottomStride,
+                final int[] dst, final int dstOffset, final int dstStride
+        ) {
+            this.algorithm = algorithm;
+            this.top = top; this.topOffset = topOffset; this.topStride = topStride;
+            this.bottom = bottom; this.bottomOffset = bottomOffset; this.bottomStride = bottomStride;
+            this.dst = dst; this.dstOffset = dstOffset; this.dstStride = dstStride;
+        }
+
+        @Override
+        public void run(final int x, final int y, final int width, final int height) {
+            algorithm.blend(
+                    top, topOffset + y*topStride + x, topStride,
+                    bottom, bottomOffset + y*bottomStride + x, bottomStride,
+                    dst, dstOffset + y*dstStride + x, dstStride,
+                    width, height
+            );
+        }
+    }
+
+    /**
+     * Splits a part of a region in half until it fits in a single tile. Rows are split
+     * before columns, so tiles are made of whole rows whenever a row fits in a tile.
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileAction action;
+        private final int x, y, width, height;
+
+        TileTask(final TileAction action, final int x, final int y, final int width, final int height) {
+            this.action = action;
+            this.x = x; this.y = y;
+            this.width = width; this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            if((long) width * height <= tileSize) {
+                action.run(x, y, width, height);
+            } else if(height > 1) {
+                final int half = height / 2;
+                invokeAll(
+                        new TileTask(action, x, y, width, half),
+                        new TileTask(action, x, y + half, width, height - half)
+                );
+            } else {
+                final int half = width / 2;
+                invokeAll(
+                        new TileTask(action, x, y, half, 1),
+                        new TileTask(action, x + half, y, width - half, 1)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package debroejm.simpleblend;
+
+/**
+ * Lookup table backed form of a BlendType. Since packed ARGB colors only have
+ * 8-bit components, every combination of top and bottom component can be
+ * precomputed once, replacing the blending math on the hot path with table reads.
+ *
+ * Two tables are kept: the final component for an opaque top, which covers most
+ * pixels, and the raw blended value for any other top alpha, which still has to
+ * be mixed over the bottom component. Both are computed with the same float
+ * operations as the BlendType itself, so results match it exactly.
+ *
+ * BlendTables are immutable and safe to share between threads. Instances are
+ * retrieved with {@link BlendType#lookup()}.
+ */
+public final class BlendTable implements BlendAlgorithm {
+
+    private final BlendType type;
+
+    /**
+     * Final 8-bit component for a fully opaque top, indexed by <code>top &lt;&lt; 8 | bottom</code>.
+     */
+    private final byte[] opaque = new byte[256 * 256];
+
+    /**
+     * Blended component before alpha mixing, indexed by <code>top &lt;&lt; 8 | bottom</code>.
+     */
+    private final float[] blended = new float[256 * 256];
+
+    BlendTable(final BlendType type) {
+        this.type = type;
+        for(int top = 0; top < 256; top++) {
+            for(int bottom = 0; bottom < 256; bottom++) {
+                final int index = top << 8 | bottom;
+                opaque[index] = (byte) type.component(top, bottom, 1.0f);
+                blended[index] = type.apply(PackedColor.unit(top), PackedColor.unit(bottom));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the BlendType this table was built from.
+     *
+     * @return BlendType of this table
+     */
+    public BlendType getType() {
+        return type;
+    }
+
+    @Override
+    public float blend(Channel channel, float top, float bottom) {
+        return type.blend(channel, top, bottom);
+    }
+
+    @Override
+    public int blend(int top, int bottom) {
+        final int alpha = top >>> 24;
+        if(alpha == 0xFF) {
+            return (bottom & 0xFF000000)
+                    | (opaque[(top >> 8  & 0xFF00) | (bottom >> 16 & 0xFF)] & 0xFF) << 16
+                    | (opaque[(top       & 0xFF00) | (bottom >>  8 & 0xFF)] & 0xFF) << 8
+                    | (opaque[(top << 8  & 0xFF00) | (bottom       & 0xFF)] & 0xFF);
+        }
+        if(alpha == 0 && type != BlendType.DIVIDE)
+            return bottom;
+        final float mix = PackedColor.unit(alpha);
+        return (bottom & 0xFF000000)
+                | component((top >> 8  & 0xFF00) | (bottom >> 16 & 0xFF), mix) << 16
+                | component((top       & 0xFF00) | (bottom >>  8 & 0xFF), mix) << 8
+                | component((top << 8  & 0xFF00) | (bottom       & 0xFF), mix);
+    }
+
+    @Override
+    public void blend(int[] top, int topOffset, int[] bottom, int bottomOffset, int[] dst, int dstOffset, int length) {
+        for(int i = 0; i < length; i++) {
+            dst[dstOffset+i] = blend(top[topOffset+i], bottom[bottomOffset+i]);
+        }
+    }
+
+    /**
+     * Composites two premultiplied 32-bit ARGB colors exactly as the BlendType of this
+     * table does. The source-over terms depend on both alphas, so they are not tabled.
+     *
+     * @param top Premultiplied 32-bit ARGB top color
+     * @param bottom Premultiplied 32-bit ARGB bottom color
+     * @return Premultiplied 32-bit ARGB blended result
+     */
+    @Override
+    public int blendPremultiplied(int top, int bottom) {
+        return type.blendPremultiplied(top, bottom);
+    }
+
+    /**
+     * Mixes a precomputed blended component over its bottom component.
+     */
+    private int component(final int index, final float alpha) {
+        final float b = PackedColor.unit(index & 0xFF);
+        float value = b + (blended[index] - b) * alpha;
+        value = value < 0.0f ? 0.0f : (value > 1.0f ? 1.0f : value);
+        return (int)(value * 255) & 0xFF;
+    }
+
+    @Override
+    public String toString() {
+        return type + " (lookup)";
+    }
+}
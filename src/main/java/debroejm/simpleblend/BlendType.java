@@ -61,6 +61,11 @@ public enum BlendType implements BlendAlgorithm {
      */
     private final BlendAlgorithm algorithm;
 
+    /**
+     * Lookup tables of this BlendType, built on first use.
+     */
+    private volatile BlendTable table = null;
+
     BlendType(BlendAlgorithm algorithm) {
         this.algorithm = algorithm;
     }
@@ -79,6 +84,162 @@ public enum BlendType implements BlendAlgorithm {
         return channel == Channel.ALPHA ? bottom : algorithm.blend(channel, top, bottom);
     }
 
+    /**
+     * Takes two 32-bit ARGB integer colors and blends them together,
+     * returning the result as a 32-bit ARGB integer color.
+     *
+     * @param top 32-bit ARGB top color
+     * @param bottom 32-bit ARGB bottom color
+     * @return 32-bit ARGB blended result
+     */
+    @Override
+    public int blend(int top, int bottom) {
+        if((top >>> 24) == 0 && this != DIVIDE)
+            return bottom;
+        final float alpha = PackedColor.unit(top >>> 24);
+        return (bottom & 0xFF000000)
+                | component(top >> 16 & 0xFF, bottom >> 16 & 0xFF, alpha) << 16
+                | component(top >>  8 & 0xFF, bottom >>  8 & 0xFF, alpha) << 8
+                | component(top       & 0xFF, bottom       & 0xFF, alpha);
+    }
+
+    /**
+     * Blends a run of 32-bit ARGB pixels, writing the results into
+     * <code>dst</code>. Pixels with a fully transparent top are copied
+     * from the bottom without blending.
+     *
+     * @param top Integer array of top pixel data
+     * @param topOffset Index of the first top pixel
+     * @param bottom Integer array of bottom pixel data
+     * @param bottomOffset Index of the first bottom pixel
+     * @param dst Integer array to write results to; may be <code>top</code> or <code>bottom</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param length Number of pixels to blend
+     */
+    @Override
+    public void blend(int[] top, int topOffset, int[] bottom, int bottomOffset, int[] dst, int dstOffset, int length) {
+        final boolean skipClear = this != DIVIDE;
+        for(int i = 0; i < length; i++) {
+            final int t = top[topOffset+i];
+            final int b = bottom[bottomOffset+i];
+            if((t >>> 24) == 0 && skipClear) {
+                dst[dstOffset+i] = b;
+                continue;
+            }
+            final float alpha = PackedColor.unit(t >>> 24);
+            dst[dstOffset+i] = (b & 0xFF000000)
+                    | component(t >> 16 & 0xFF, b >> 16 & 0xFF, alpha) << 16
+                    | component(t >>  8 & 0xFF, b >>  8 & 0xFF, alpha) << 8
+                    | component(t       & 0xFF, b       & 0xFF, alpha);
+        }
+    }
+
+    /**
+     * Composites two premultiplied 32-bit ARGB colors with the source-over operator,
+     * as described by {@link BlendAlgorithm#blendPremultiplied(int, int)}. The blend
+     * term of each BlendType is rewritten over the premultiplied components, so no
+     * component is ever divided by its alpha, except by DIVIDE.
+     *
+     * @param top Premultiplied 32-bit ARGB top color
+     * @param bottom Premultiplied 32-bit ARGB bottom color
+     * @return Premultiplied 32-bit ARGB blended result
+     */
+    @Override
+    public int blendPremultiplied(int top, int bottom) {
+        final int ta = top >>> 24, ba = bottom >>> 24;
+        if(ta == 0)
+            return bottom;
+        if(ba == 0)
+            return top;
+        final float as = PackedColor.unit(ta), ab = PackedColor.unit(ba);
+        final float ao = as + ab - as*ab;
+        final int alpha = (int)(ao * 255 + 0.5f);
+        return alpha << 24
+                | premultiplied(top >> 16 & 0xFF, bottom >> 16 & 0xFF, as, ab, ao, alpha) << 16
+                | premultiplied(top >>  8 & 0xFF, bottom >>  8 & 0xFF, as, ab, ao, alpha) << 8
+                | premultiplied(top       & 0xFF, bottom       & 0xFF, as, ab, ao, alpha);
+    }
+
+    /**
+     * Composites a single premultiplied 8-bit color component.
+     */
+    private int premultiplied(final int top, final int bottom, final float as, final float ab, final float ao, final int alpha) {
+        final float s = PackedColor.unit(top);
+        final float b = PackedColor.unit(bottom);
+        return BlendAlgorithm.composite(s*(1.0f-ab) + b*(1.0f-as) + term(s, b, as, ab), ao, alpha);
+    }
+
+    /**
+     * Computes <code>as*ab*apply(s/as, b/ab)</code> for premultiplied components
+     * <code>s</code> and <code>b</code> with alphas <code>as</code> and <code>ab</code>.
+     */
+    float term(final float s, final float b, final float as, final float ab) {
+        switch(this) {
+            case MULTIPLY:     return s*b;
+            case SCREEN:       return s*ab + b*as - s*b;
+            case OVERLAY:      return 2*b < ab ? 2*s*b : as*ab - 2*(as-s)*(ab-b);
+            case DARKEN:       return Math.min(s*ab, b*as);
+            case LIGHTEN:      return Math.max(s*ab, b*as);
+            case DIFFERENCE:   return Math.abs(s*ab - b*as);
+            case PLUS_LIGHTER: return s*ab + b*as;
+            case PLUS_DARKER:  return s*ab + b*as - as*ab;
+            case DIVIDE:       return as*as*b/s;
+            default:           return as*ab*algorithm.blend(Channel.RED, s/as, b/ab);
+        }
+    }
+
+    /**
+     * Blends a single 8-bit color component and mixes it over the bottom
+     * component by the top alpha. Performs the same float operations as
+     * {@link BlendAlgorithm#blend(Color, Color)}, so results are identical.
+     */
+    int component(final int top, final int bottom, final float alpha) {
+        final float t = PackedColor.unit(top);
+        final float b = PackedColor.unit(bottom);
+        float value = b + (apply(t, b) - b) * alpha;
+        value = value < 0.0f ? 0.0f : (value > 1.0f ? 1.0f : value);
+        return (int)(value * 255) & 0xFF;
+    }
+
+    /**
+     * Inlined form of each BlendType's lambda. The bulk loops use this instead
+     * of the lambda so that every component is not a megamorphic call.
+     */
+    float apply(final float a, final float b) {
+        switch(this) {
+            case MULTIPLY:     return a*b;
+            case SCREEN:       return 1.0f-(1.0f-a)*(1.0f-b);
+            case OVERLAY:      return b < 0.5f ? (2*a*b) : (1.0f-2.0f*(1.0f-a)*(1.0f-b));
+            case DARKEN:       return Math.min(a,b);
+            case LIGHTEN:      return Math.max(a,b);
+            case DIFFERENCE:   return Math.max(a,b) - Math.min(a,b);
+            case PLUS_LIGHTER: return a+b;
+            case PLUS_DARKER:  return a+b-1;
+            case DIVIDE:       return b/a;
+            default:           return algorithm.blend(Channel.RED, a, b);
+        }
+    }
+
+    /**
+     * Retrieves a lookup table backed version of this BlendType. The tables are
+     * built the first time this is called and then shared by every thread. Blending
+     * through the returned BlendTable produces bit for bit the same ARGB integers
+     * as blending through this BlendType.
+     *
+     * @return BlendTable for this BlendType
+     */
+    public BlendTable lookup() {
+        BlendTable result = table;
+        if(result == null) {
+            synchronized(this) {
+                result = table;
+                if(result == null)
+                    table = result = new BlendTable(this);
+            }
+        }
+        return result;
+    }
+
     /**
      * Attempts to determine a BlendType from a String value. If the String value is null
      * or doesn't match a BlendType, returns <code>null</code>.
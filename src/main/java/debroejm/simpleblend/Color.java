@@ -9,15 +9,19 @@ import java.io.Serializable;
  * Color objects statically represent a certain color value. Once created,
  * the data of a Color object cannot change, so it is never necessary to
  * make a deep copy.
+ *
+ * Colors created from an ARGB integer only compute their HSB representation
+ * the first time it is requested, so creating them is cheap when only the
+ * RGB values are used.
  */
 public final class Color implements Comparable<Color>, Serializable {
 
+    private static final long serialVersionUID = -3675449551288538032L;
+
     static float clamp(float value, float min, float max) {
         return value < min ? min : (value > max ? max : value);
     }
 
-    private static final float EPSILON = 0.001f;
-
 
 
     // ***************
@@ -60,10 +64,7 @@ public final class Color implements Comparable<Color>, Serializable {
      * @return 32-bit ARGB or AHSB integer value
      */
     public static int convertColorIntFromFloat(float r, float g, float b, float a) {
-        return  ((int)(clamp(a, 0.0f, 1.0f) * 255) & 0xFF) << 24 |
-                ((int)(clamp(r, 0.0f, 1.0f) * 255) & 0xFF) << 16 |
-                ((int)(clamp(g, 0.0f, 1.0f) * 255) & 0xFF) << 8 |
-                ((int)(clamp(b, 0.0f, 1.0f) * 255) & 0xFF);
+        return PackedColor.pack(r, g, b, a);
     }
 
     /**
@@ -99,12 +100,7 @@ public final class Color implements Comparable<Color>, Serializable {
      * @return Float array of the format { alpha, red/hue, green/saturation, blue/brightness }
      */
     public static float[] convertColorArrayFromInt(int color) {
-        return new float[]{
-                (color >> 24 & 0xFF) / 255.0f,
-                (color >> 16 & 0xFF) / 255.0f,
-                (color >> 8 & 0xFF) / 255.0f,
-                (color & 0xFF) / 255.0f
-        };
+        return PackedColor.unpack(color, new float[4]);
     }
 
     /**
@@ -142,36 +138,7 @@ public final class Color implements Comparable<Color>, Serializable {
     public static float[] convertRGBtoHSB(float[] argb) throws IllegalArgumentException {
         if(argb.length < 4)
             throw new IllegalArgumentException("RGB float array must have 4 components");
-
-        float max = -0.1f, min = 1.1f;
-        int mI = -1;
-        for(int i = 1; i < 4; i++) {
-            if(argb[i] < 0f || argb[i] > 1f)
-                throw new IllegalArgumentException("RGB components must be between 0.0f and 1.0f, inclusive");
-
-            if(argb[i] < min) min = argb[i];
-            if(argb[i] > max) {
-                max = argb[i];
-                mI = i - 1;
-            }
-        }
-
-        float ahsb[] = new float[4];
-
-        float delta = max - min;
-        ahsb[3] = max;
-        if(Math.abs(delta) < EPSILON) {
-            ahsb[1] = ahsb[2] = 0f;
-        } else {
-            ahsb[2] = delta / max;
-            float first = argb[((mI+1)%3)+1];
-            float second = argb[((mI+2)%3)+1];
-            ahsb[1] = (first - second) / delta + ( (mI == 0 && first < second) ? 3 : mI) * 2f;
-            ahsb[1] /= 6f;
-        }
-        ahsb[0] = argb[0];
-
-        return ahsb;
+        return PackedColor.rgbToHSB(argb, new float[4]);
     }
 
     /**
@@ -209,56 +176,7 @@ public final class Color implements Comparable<Color>, Serializable {
     public static float[] convertHSBtoRGB(float[] ahsb) throws IllegalArgumentException {
         if(ahsb.length < 4)
             throw new IllegalArgumentException("HSL float array must have 4 components");
-
-        float argb[] = new float[4];
-
-        if(ahsb[2] < EPSILON) {
-            argb[1] = argb[2] = argb[3] = ahsb[3];
-        } else {
-            float f = ahsb[1] * 6.0f;
-            if(f >= 6.0f) f -= 6.0f;
-            int i = (int)f;
-            f = f - i;
-            float p = ahsb[3] * (1.0f - ahsb[2]);
-            float q = ahsb[3] * (1.0f - ahsb[2] * f);
-            float t = ahsb[3] * (1.0f - ahsb[2] * (1.0f - f));
-            switch(i) {
-                case 0:
-                    argb[1] = ahsb[3];
-                    argb[2] = t;
-                    argb[3] = p;
-                    break;
-                case 1:
-                    argb[1] = q;
-                    argb[2] = ahsb[3];
-                    argb[3] = p;
-                    break;
-                case 2:
-                    argb[1] = p;
-                    argb[2] = ahsb[3];
-                    argb[3] = t;
-                    break;
-                case 3:
-                    argb[1] = p;
-                    argb[2] = q;
-                    argb[3] = ahsb[3];
-                    break;
-                case 4:
-                    argb[1] = t;
-                    argb[2] = p;
-                    argb[3] = ahsb[3];
-                    break;
-                case 5:
-                default:
-                    argb[1] = ahsb[3];
-                    argb[2] = p;
-                    argb[3] = q;
-                    break;
-            }
-        }
-        argb[0] = ahsb[0];
-
-        return argb;
+        return PackedColor.hsbToRGB(ahsb, new float[4]);
     }
 
 
@@ -268,24 +186,37 @@ public final class Color implements Comparable<Color>, Serializable {
     // **********************
 
     private final int rgb;
-    private final int hsb;
+
+    /**
+     * AHSB integer representation. The alpha of a Color is always the same in both
+     * representations, so an alpha that differs from <code>rgb</code>'s marks a
+     * value that has not been computed yet. Recomputing it always gives the same
+     * result, so no locking is needed when it is filled in. The field is volatile so
+     * a Color shared through a data race can never expose its default value of 0,
+     * which would pass as a computed value for a fully transparent color.
+     */
+    private volatile int hsb;
 
     private Color(int rgb, int hsb) {
         this.rgb = rgb;
         this.hsb = hsb;
     }
 
+    private Color(int rgb) {
+        this.rgb = rgb;
+        this.hsb = ~rgb & 0xFF000000;
+    }
+
+
     /**
-     * Creates a Color representing the given integer color.
+     * Creates a Color representing the given integer color. The HSB
+     * representation is computed the first time it is requested.
      *
      * @param rgb 32-bit ARGB integer color.
      * @return Color object
      */
     public static Color ofRGB(int rgb) {
-        float[] argb = convertColorArrayFromInt(rgb);
-        float[] ahsb = convertRGBtoHSB(argb);
-        int hsb = convertColorIntFromFloat(ahsb);
-        return new Color(rgb, hsb);
+        return new Color(rgb);
     }
 
     /**
@@ -323,10 +254,7 @@ public final class Color implements Comparable<Color>, Serializable {
      * @return Color object
      */
     public static Color ofHSB(int hsb) {
-        float[] ahsb = convertColorArrayFromInt(hsb);
-        float[] argb = convertHSBtoRGB(ahsb);
-        int rgb = convertColorIntFromFloat(argb);
-        return new Color(rgb, hsb);
+        return new Color(PackedColor.hsbToRGB(hsb), hsb);
     }
 
     /**
@@ -358,18 +286,25 @@ public final class Color implements Comparable<Color>, Serializable {
     }
 
     public int getRGB() { return rgb; }
-    public int getHSB() { return hsb; }
+    public int getHSB() {
+        int result = hsb;
+        if(((result ^ rgb) & 0xFF000000) != 0) {
+            result = PackedColor.rgbToHSB(rgb);
+            hsb = result;
+        }
+        return result;
+    }
 
     public float getAlpha()      { return (rgb >> 24 & 0xFF) / 255.0f; }
     public float getRed()        { return (rgb >> 16 & 0xFF) / 255.0f; }
     public float getGreen()      { return (rgb >>  8 & 0xFF) / 255.0f; }
     public float getBlue()       { return (rgb       & 0xFF) / 255.0f; }
-    public float getHue()        { return (hsb >> 16 & 0xFF) / 255.0f; }
-    public float getSaturation() { return (hsb >>  8 & 0xFF) / 255.0f; }
-    public float getBrightness() { return (hsb       & 0xFF) / 255.0f; }
+    public float getHue()        { return (getHSB() >> 16 & 0xFF) / 255.0f; }
+    public float getSaturation() { return (getHSB() >>  8 & 0xFF) / 255.0f; }
+    public float getBrightness() { return (getHSB()       & 0xFF) / 255.0f; }
 
     public float[] getRGBComponents() { return convertColorArrayFromInt(rgb); }
-    public float[] getHSBComponents() { return convertColorArrayFromInt(hsb); }
+    public float[] getHSBComponents() { return convertColorArrayFromInt(getHSB()); }
 
     /**
      * Hashcode is based on the ARGB integer representation of this color.
@@ -0,0 +1,60 @@
+package debroejm.simpleblend;
+
+import java.nio.IntBuffer;
+
+/**
+ * PixelSurface backed by an IntBuffer, usually a view of a direct ByteBuffer.
+ * Pixels are accessed with absolute indices, so the buffer's position is never changed.
+ */
+final class DirectSurface extends PixelSurface {
+
+    private final IntBuffer buffer;
+
+    DirectSurface(
+            final IntBuffer buffer,
+            final int offset, final int stride,
+            final int width, final int height,
+            final PixelFormat format
+    ) {
+        super(buffer.limit(), offset, stride, width, height, format);
+        this.buffer = buffer;
+    }
+
+    private int index(final int x, final int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException("Pixel is outside of the surface");
+        return offset + y*stride + x;
+    }
+
+    @Override
+    public int getPixel(final int x, final int y) {
+        return format.toARGB(buffer.get(index(x, y)));
+    }
+
+    @Override
+    public void setPixel(final int x, final int y, final int argb) {
+        buffer.put(index(x, y), format.fromARGB(argb));
+    }
+
+    @Override
+    public void getRow(final int x, final int y, final int length, final int[] dst, final int dstOffset) {
+        checkRegion(x, y, length, 1);
+        final int start = offset + y*stride + x;
+        for(int i = 0; i < length; i++)
+            dst[dstOffset+i] = format.toARGB(buffer.get(start+i));
+    }
+
+    @Override
+    public void setRow(final int x, final int y, final int length, final int[] src, final int srcOffset) {
+        checkRegion(x, y, length, 1);
+        final int start = offset + y*stride + x;
+        for(int i = 0; i < length; i++)
+            buffer.put(start+i, format.fromARGB(src[srcOffset+i]));
+    }
+
+    @Override
+    public PixelSurface subSurface(final int x, final int y, final int width, final int height) {
+        checkRegion(x, y, width, height);
+        return new DirectSurface(buffer, offset + y*stride + x, stride, width, height, format);
+    }
+}
@@ -0,0 +1,84 @@
+package debroejm.simpleblend;
+
+/**
+ * PixelSurface backed by an int array on the heap.
+ */
+final class HeapSurface extends PixelSurface {
+
+    private final int[] pixels;
+
+    HeapSurface(
+            final int[] pixels,
+            final int offset, final int stride,
+            final int width, final int height,
+            final PixelFormat format
+    ) {
+        super(pixels.length, offset, stride, width, height, format);
+        this.pixels = pixels;
+    }
+
+    private int index(final int x, final int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException("Pixel is outside of the surface");
+        return offset + y*stride + x;
+    }
+
+    @Override
+    public int getPixel(final int x, final int y) {
+        return format.toARGB(pixels[index(x, y)]);
+    }
+
+    @Override
+    public void setPixel(final int x, final int y, final int argb) {
+        pixels[index(x, y)] = format.fromARGB(argb);
+    }
+
+    @Override
+    public void getRow(final int x, final int y, final int length, final int[] dst, final int dstOffset) {
+        checkRegion(x, y, length, 1);
+        final int start = offset + y*stride + x;
+        if(format == PixelFormat.ARGB) {
+            System.arraycopy(pixels, start, dst, dstOffset, length);
+        } else {
+            for(int i = 0; i < length; i++)
+                dst[dstOffset+i] = format.toARGB(pixels[start+i]);
+        }
+    }
+
+    @Override
+    public void setRow(final int x, final int y, final int length, final int[] src, final int srcOffset) {
+        checkRegion(x, y, length, 1);
+        final int start = offset + y*stride + x;
+        if(format == PixelFormat.ARGB) {
+            System.arraycopy(src, srcOffset, pixels, start, length);
+        } else {
+            for(int i = 0; i < length; i++)
+                pixels[start+i] = format.fromARGB(src[srcOffset+i]);
+        }
+    }
+
+    @Override
+    public PixelSurface subSurface(final int x, final int y, final int width, final int height) {
+        checkRegion(x, y, width, height);
+        return new HeapSurface(pixels, offset + y*stride + x, stride, width, height, format);
+    }
+
+    @Override
+    public boolean hasArray() {
+        return format == PixelFormat.ARGB;
+    }
+
+    @Override
+    public int[] array() {
+        if(!hasArray())
+            throw new UnsupportedOperationException();
+        return pixels;
+    }
+
+    @Override
+    public int arrayOffset() {
+        if(!hasArray())
+            throw new UnsupportedOperationException();
+        return offset;
+    }
+}
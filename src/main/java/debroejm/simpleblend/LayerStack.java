@@ -0,0 +1,244 @@
+package debroejm.simpleblend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Composites an ordered stack of layers over a base image in a single pass.
+ * Each layer has its own pixel data, BlendAlgorithm, opacity and optional mask.
+ *
+ * Instead of blending every layer over the whole image in turn, the image is
+ * processed one tile at a time: the tile's running result is kept in a small
+ * scratch buffer while every layer is blended into it, and only written out
+ * once all layers are applied. Parallel compositing reuses one set of scratch
+ * buffers per thread. The base and destination are therefore only
+ * touched once, no matter how many layers there are.
+ *
+ * The result is the same as blending each layer over the previous result
+ * with its BlendAlgorithm, in the order the layers were added.
+ */
+public class LayerStack {
+
+    /**
+     * Data class for a single layer of a LayerStack.
+     */
+    public static final class Layer {
+        public final int[] pixels;
+        public final BlendAlgorithm algorithm;
+        public final float opacity;
+        public final int[] mask;
+
+        /**
+         * Opacity as an 8-bit value.
+         */
+        private final int level;
+
+        Layer(final int[] pixels, final BlendAlgorithm algorithm, final float opacity, final int[] mask) {
+            this.pixels = pixels;
+            this.algorithm = algorithm;
+            this.opacity = opacity;
+            this.mask = mask;
+            this.level = Math.round(Color.clamp(opacity, 0.0f, 1.0f) * 255);
+        }
+
+        /**
+         * Whether this layer's pixels can be blended directly, without scaling their alpha.
+         */
+        boolean isPlain() {
+            return level == 0xFF && mask == null;
+        }
+
+        /**
+         * Copies a run of this layer's pixels into <code>dst</code>, with their
+         * alpha scaled by this layer's opacity and mask.
+         */
+        void modulate(final int offset, final int[] dst, final int length) {
+            for(int i = 0; i < length; i++) {
+                final int pixel = pixels[offset+i];
+                int alpha = multiply(pixel >>> 24, level);
+                if(mask != null)
+                    alpha = multiply(alpha, mask[offset+i] >>> 24);
+                dst[i] = alpha << 24 | (pixel & 0x00FFFFFF);
+            }
+        }
+
+        private static int multiply(final int a, final int b) {
+            return (a * b + 127) / 255;
+        }
+    }
+
+    private final List<Layer> layers = new ArrayList<>();
+
+    /**
+     * Adds a fully opaque layer to the top of the stack.
+     *
+     * @param pixels Integer array of 32-bit ARGB pixel data
+     * @param algorithm BlendAlgorithm to blend the layer with
+     */
+    public void addLayer(final int[] pixels, final BlendAlgorithm algorithm) {
+        addLayer(pixels, algorithm, 1.0f, null);
+    }
+
+    /**
+     * Adds a layer to the top of the stack.
+     *
+     * @param pixels Integer array of 32-bit ARGB pixel data
+     * @param algorithm BlendAlgorithm to blend the layer with
+     * @param opacity Opacity of the layer, between 0.0f and 1.0f inclusive
+     */
+    public void addLayer(final int[] pixels, final BlendAlgorithm algorithm, final float opacity) {
+        addLayer(pixels, algorithm, opacity, null);
+    }
+
+    /**
+     * Adds a masked layer to the top of the stack. The alpha channel of the mask
+     * scales the alpha of the layer's pixel at the same index.
+     *
+     * @param pixels Integer array of 32-bit ARGB pixel data
+     * @param algorithm BlendAlgorithm to blend the layer with
+     * @param opacity Opacity of the layer, between 0.0f and 1.0f inclusive
+     * @param mask Integer array of 32-bit ARGB mask data, or <code>null</code> for no mask
+     */
+    public void addLayer(final int[] pixels, final BlendAlgorithm algorithm, final float opacity, final int[] mask) {
+        if(pixels == null || algorithm == null)
+            throw new NullPointerException();
+        layers.add(new Layer(pixels, algorithm, opacity, mask));
+    }
+
+    /**
+     * Retrieves an unmodifiable list of the layers in this stack, from bottom to top.
+     *
+     * @return Unmodifiable list of layers
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * Removes all layers from this stack.
+     */
+    public void clear() {
+        layers.clear();
+    }
+
+    /**
+     * Composites a run of pixels. The base, the destination and every layer share
+     * the same offset.
+     *
+     * @param base Integer array of 32-bit ARGB base pixel data
+     * @param dst Integer array to write results to; may be <code>base</code>
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to composite
+     */
+    public void composite(final int[] base, final int[] dst, final int offset, final int length) {
+        composite(base, dst, offset, length, length, 1);
+    }
+
+    /**
+     * Composites a rectangular region of pixels. The base, the destination and
+     * every layer share the same offset and stride.
+     *
+     * @param base Integer array of 32-bit ARGB base pixel data
+     * @param dst Integer array to write results to; may be <code>base</code>
+     * @param offset Index of the first pixel
+     * @param stride Row stride of the pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void composite(
+            final int[] base, final int[] dst,
+            final int offset, final int stride,
+            final int width, final int height
+    ) {
+        final int tileWidth = Math.max(1, Math.min(width, BlendEngine.DEFAULT_TILE_SIZE));
+        final int tileHeight = Math.max(1, BlendEngine.DEFAULT_TILE_SIZE / tileWidth);
+        final int[] running = new int[tileWidth * tileHeight];
+        final int[] scratch = new int[tileWidth];
+        for(int y = 0; y < height; y += tileHeight) {
+            for(int x = 0; x < width; x += tileWidth) {
+                compositeTile(
+                        base, dst, offset, stride,
+                        x, y, Math.min(tileWidth, width - x), Math.min(tileHeight, height - y),
+                        running, scratch
+                );
+            }
+        }
+    }
+
+    /**
+     * Composites a rectangular region of pixels, splitting it into tiles that are
+     * processed in parallel by the given <code>engine</code>. The base, the
+     * destination and every layer share the same offset and stride.
+     *
+     * @param engine BlendEngine to process tiles with
+     * @param base Integer array of 32-bit ARGB base pixel data
+     * @param dst Integer array to write results to; may be <code>base</code>
+     * @param offset Index of the first pixel
+     * @param stride Row stride of the pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void composite(
+            final BlendEngine engine,
+            final int[] base, final int[] dst,
+            final int offset, final int stride,
+            final int width, final int height
+    ) {
+        engine.forEachTile(width, height, (x, y, w, h) -> {
+            if((long) w * h > BlendEngine.DEFAULT_TILE_SIZE) {
+                // The engine ran the whole region at once, so split it into tiles here
+                composite(base, dst, offset + y*stride + x, stride, w, h);
+            } else {
+                final int[][] buffers = scratch(w * h, w);
+                compositeTile(base, dst, offset, stride, x, y, w, h, buffers[0], buffers[1]);
+            }
+        });
+    }
+
+    /**
+     * Running result and row scratch buffers of each thread compositing tiles in parallel.
+     */
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(
+            () -> new int[][]{ new int[BlendEngine.DEFAULT_TILE_SIZE], new int[BlendEngine.DEFAULT_TILE_SIZE] });
+
+    /**
+     * Retrieves the calling thread's scratch buffers, growing them if a tile does not fit.
+     */
+    private static int[][] scratch(final int size, final int width) {
+        final int[][] buffers = SCRATCH.get();
+        if(buffers[0].length < size)
+            buffers[0] = new int[size];
+        if(buffers[1].length < width)
+            buffers[1] = new int[width];
+        return buffers;
+    }
+
+    private void compositeTile(
+            final int[] base, final int[] dst,
+            final int offset, final int stride,
+            final int x, final int y, final int width, final int height,
+            final int[] running, final int[] scratch
+    ) {
+        final int start = offset + y*stride + x;
+
+        for(int row = 0; row < height; row++)
+            System.arraycopy(base, start + row*stride, running, row*width, width);
+
+        for(final Layer layer : layers) {
+            final boolean plain = layer.isPlain();
+            for(int row = 0; row < height; row++) {
+                final int index = start + row*stride;
+                if(plain) {
+                    layer.algorithm.blend(layer.pixels, index, running, row*width, running, row*width, width);
+                } else {
+                    layer.modulate(index, scratch, width);
+                    layer.algorithm.blend(scratch, 0, running, row*width, running, row*width, width);
+                }
+            }
+        }
+
+        for(int row = 0; row < height; row++)
+            System.arraycopy(running, row*width, dst, start + row*stride, width);
+    }
+}
@@ -0,0 +1,393 @@
+package debroejm.simpleblend;
+
+/**
+ * Static utility methods for working with 32-bit ARGB and AHSB integer colors
+ * without creating any objects. Methods that produce several components write
+ * them into caller supplied arrays instead of returning new ones, so they can
+ * be used in per-pixel loops without generating garbage.
+ *
+ * The array returning conversion methods in Color delegate to these methods,
+ * so both always produce the same results.
+ */
+public final class PackedColor {
+
+    private PackedColor() {}
+
+    private static final float EPSILON = 0.001f;
+
+    /**
+     * Float values of every 8-bit color component, indexed by the component.
+     */
+    private static final float[] UNIT = new float[256];
+    static {
+        for(int i = 0; i < UNIT.length; i++)
+            UNIT[i] = i / 255.0f;
+    }
+
+
+
+    // ********************
+    //  Channel Extraction
+    // ********************
+
+    public static int alpha(int color) { return color >>> 24; }
+    public static int red(int color)   { return color >> 16 & 0xFF; }
+    public static int green(int color) { return color >>  8 & 0xFF; }
+    public static int blue(int color)  { return color       & 0xFF; }
+
+    /**
+     * Retrieves the float value of an 8-bit color component.
+     *
+     * @param component Integer component, between 0 and 255 inclusive
+     * @return Float component, between 0.0f and 1.0f inclusive
+     */
+    public static float unit(int component) {
+        return UNIT[component & 0xFF];
+    }
+
+    /**
+     * Packs 8-bit color components into an integer color.
+     * Also functions for HSB.
+     *
+     * @param a Alpha component
+     * @param r Red/hue component
+     * @param g Green/saturation component
+     * @param b Blue/brightness component
+     * @return 32-bit ARGB or AHSB integer value
+     */
+    public static int pack(int a, int r, int g, int b) {
+        return (a & 0xFF) << 24 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+    }
+
+    /**
+     * Packs float color components into an integer color, clamping each
+     * component between 0.0f and 1.0f. Also functions for HSB.
+     *
+     * @param r Red/hue float component
+     * @param g Green/saturation float component
+     * @param b Blue/brightness float component
+     * @param a Alpha float component
+     * @return 32-bit ARGB or AHSB integer value
+     */
+    public static int pack(float r, float g, float b, float a) {
+        return  ((int)(Color.clamp(a, 0.0f, 1.0f) * 255) & 0xFF) << 24 |
+                ((int)(Color.clamp(r, 0.0f, 1.0f) * 255) & 0xFF) << 16 |
+                ((int)(Color.clamp(g, 0.0f, 1.0f) * 255) & 0xFF) << 8 |
+                ((int)(Color.clamp(b, 0.0f, 1.0f) * 255) & 0xFF);
+    }
+
+    /**
+     * Writes the float components of an integer color into <code>dst</code>.
+     * Also functions for HSB.
+     *
+     * @param color 32-bit ARGB or AHSB integer color value
+     * @param dst Float array to write to, in the format { alpha, red/hue, green/saturation, blue/brightness }
+     * @param offset Index in <code>dst</code> to write the alpha component to
+     * @return The given <code>dst</code> array
+     */
+    public static float[] unpack(int color, float[] dst, int offset) {
+        dst[offset]   = UNIT[color >>> 24];
+        dst[offset+1] = UNIT[color >> 16 & 0xFF];
+        dst[offset+2] = UNIT[color >>  8 & 0xFF];
+        dst[offset+3] = UNIT[color       & 0xFF];
+        return dst;
+    }
+
+    /**
+     * Writes the float components of an integer color into <code>dst</code>.
+     * Also functions for HSB.
+     *
+     * @param color 32-bit ARGB or AHSB integer color value
+     * @param dst Float array to write to, in the format { alpha, red/hue, green/saturation, blue/brightness }
+     * @return The given <code>dst</code> array
+     */
+    public static float[] unpack(int color, float[] dst) {
+        return unpack(color, dst, 0);
+    }
+
+
+
+    // *********************
+    //  Premultiplied Alpha
+    // *********************
+
+    /**
+     * Converts a 32-bit ARGB color into a premultiplied 32-bit ARGB color, where each
+     * color component is scaled by the alpha and rounded. Fully transparent colors
+     * become 0, and opaque colors are unchanged.
+     *
+     * @param argb 32-bit ARGB integer color
+     * @return Premultiplied 32-bit ARGB integer color
+     */
+    public static int premultiply(int argb) {
+        final int a = argb >>> 24;
+        if(a == 0xFF)
+            return argb;
+        if(a == 0)
+            return 0;
+        return a << 24
+                | multiply(argb >> 16 & 0xFF, a) << 16
+                | multiply(argb >>  8 & 0xFF, a) << 8
+                | multiply(argb       & 0xFF, a);
+    }
+
+    /**
+     * Converts a premultiplied 32-bit ARGB color back into a 32-bit ARGB color. The
+     * color of a fully transparent pixel is lost, so it becomes 0. Converting a color
+     * with a low alpha to premultiplied and back loses precision in its components.
+     *
+     * @param pargb Premultiplied 32-bit ARGB integer color
+     * @return 32-bit ARGB integer color
+     */
+    public static int unpremultiply(int pargb) {
+        final int a = pargb >>> 24;
+        if(a == 0xFF)
+            return pargb;
+        if(a == 0)
+            return 0;
+        return a << 24
+                | divide(pargb >> 16 & 0xFF, a) << 16
+                | divide(pargb >>  8 & 0xFF, a) << 8
+                | divide(pargb       & 0xFF, a);
+    }
+
+    /**
+     * Converts a run of 32-bit ARGB colors into premultiplied colors, writing them into
+     * <code>dst</code>. Each color is converted exactly as {@link #premultiply(int)}
+     * converts it; runs of opaque colors are copied as they are.
+     *
+     * @param src Integer array of 32-bit ARGB colors
+     * @param srcOffset Index of the first color
+     * @param dst Integer array to write premultiplied colors to; may be <code>src</code>
+     * @param dstOffset Index to write the first color to
+     * @param length Number of colors to convert
+     */
+    public static void premultiply(int[] src, int srcOffset, int[] dst, int dstOffset, int length) {
+        convert(src, srcOffset, dst, dstOffset, length, true);
+    }
+
+    /**
+     * Converts a run of premultiplied 32-bit ARGB colors back into 32-bit ARGB colors,
+     * writing them into <code>dst</code>. Each color is converted exactly as
+     * {@link #unpremultiply(int)} converts it; runs of opaque colors are copied as they are.
+     *
+     * @param src Integer array of premultiplied 32-bit ARGB colors
+     * @param srcOffset Index of the first color
+     * @param dst Integer array to write 32-bit ARGB colors to; may be <code>src</code>
+     * @param dstOffset Index to write the first color to
+     * @param length Number of colors to convert
+     */
+    public static void unpremultiply(int[] src, int srcOffset, int[] dst, int dstOffset, int length) {
+        convert(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    private static void convert(
+            final int[] src, final int srcOffset,
+            final int[] dst, final int dstOffset,
+            final int length,
+            final boolean premultiply
+    ) {
+        final boolean copy = src != dst || srcOffset != dstOffset;
+        int i = 0;
+        while(i < length) {
+            final int color = src[srcOffset+i];
+            if((color >>> 24) == 0xFF) {
+                int end = i + 1;
+                while(end < length && (src[srcOffset+end] >>> 24) == 0xFF)
+                    end++;
+                if(copy)
+                    System.arraycopy(src, srcOffset+i, dst, dstOffset+i, end - i);
+                i = end;
+            } else {
+                dst[dstOffset+i] = premultiply ? premultiply(color) : unpremultiply(color);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Scales an 8-bit component by an 8-bit alpha, rounding to the nearest value.
+     */
+    private static int multiply(final int component, final int alpha) {
+        return (component * alpha + 127) / 255;
+    }
+
+    /**
+     * Divides a premultiplied 8-bit component by its 8-bit alpha, rounding to the
+     * nearest value and clamping components that were larger than their alpha.
+     */
+    private static int divide(final int component, final int alpha) {
+        return Math.min(0xFF, (component * 255 + (alpha >> 1)) / alpha);
+    }
+
+
+
+    // *****************
+    //  RGB/HSB Scalars
+    // *****************
+
+    /**
+     * Calculates the hue of RGB color components, which are assumed to be
+     * between 0.0f and 1.0f inclusive.
+     *
+     * @param r Float red value
+     * @param g Float green value
+     * @param b Float blue value
+     * @return Float hue value
+     */
+    public static float hue(float r, float g, float b) {
+        // Ties go to the first channel in RGB order
+        final int maxIndex = r >= g ? (r >= b ? 0 : 2) : (g >= b ? 1 : 2);
+        final float max = maxIndex == 0 ? r : (maxIndex == 1 ? g : b);
+        final float delta = max - Math.min(r, Math.min(g, b));
+        if(Math.abs(delta) < EPSILON)
+            return 0f;
+        final float first  = maxIndex == 0 ? g : (maxIndex == 1 ? b : r);
+        final float second = maxIndex == 0 ? b : (maxIndex == 1 ? r : g);
+        float hue = (first - second) / delta + ( (maxIndex == 0 && first < second) ? 3 : maxIndex) * 2f;
+        hue /= 6f;
+        return hue;
+    }
+
+    /**
+     * Calculates the saturation of RGB color components, which are assumed to
+     * be between 0.0f and 1.0f inclusive.
+     *
+     * @param r Float red value
+     * @param g Float green value
+     * @param b Float blue value
+     * @return Float saturation value
+     */
+    public static float saturation(float r, float g, float b) {
+        final float max = Math.max(r, Math.max(g, b));
+        final float delta = max - Math.min(r, Math.min(g, b));
+        return Math.abs(delta) < EPSILON ? 0f : delta / max;
+    }
+
+    /**
+     * Calculates the brightness of RGB color components, which are assumed to
+     * be between 0.0f and 1.0f inclusive.
+     *
+     * @param r Float red value
+     * @param g Float green value
+     * @param b Float blue value
+     * @return Float brightness value
+     */
+    public static float brightness(float r, float g, float b) {
+        return Math.max(r, Math.max(g, b));
+    }
+
+    private static final int V = 0, P = 1, Q = 2, T = 3;
+
+    /**
+     * Which of the intermediary HSB values each RGB component takes, per sector of the hue.
+     */
+    private static final int[][] SECTORS = {
+            { V, T, P },
+            { Q, V, P },
+            { P, V, T },
+            { P, Q, V },
+            { T, P, V },
+            { V, P, Q }
+    };
+
+    /**
+     * Calculates a single RGB component of HSB color components.
+     *
+     * @param index Index of the RGB component; 0 for red, 1 for green, 2 for blue
+     */
+    private static float component(int index, float h, float s, float v) {
+        if(s < EPSILON)
+            return v;
+        float f = h * 6.0f;
+        if(f >= 6.0f) f -= 6.0f;
+        int i = (int)f;
+        f = f - i;
+        switch(SECTORS[i >= 0 && i < 5 ? i : 5][index]) {
+            case V:  return v;
+            case P:  return v * (1.0f - s);
+            case Q:  return v * (1.0f - s * f);
+            case T:
+            default: return v * (1.0f - s * (1.0f - f));
+        }
+    }
+
+
+
+    // *********************
+    //  RGB/HSB Conversions
+    // *********************
+
+    /**
+     * Converts a 32-bit ARGB integer color into a 32-bit AHSB integer color.
+     *
+     * @param argb 32-bit ARGB integer color
+     * @return 32-bit AHSB integer color
+     */
+    public static int rgbToHSB(int argb) {
+        final float r = UNIT[argb >> 16 & 0xFF];
+        final float g = UNIT[argb >>  8 & 0xFF];
+        final float b = UNIT[argb       & 0xFF];
+        return pack(hue(r, g, b), saturation(r, g, b), brightness(r, g, b), UNIT[argb >>> 24]);
+    }
+
+    /**
+     * Converts a 32-bit AHSB integer color into a 32-bit ARGB integer color.
+     *
+     * @param ahsb 32-bit AHSB integer color
+     * @return 32-bit ARGB integer color
+     */
+    public static int hsbToRGB(int ahsb) {
+        final float h = UNIT[ahsb >> 16 & 0xFF];
+        final float s = UNIT[ahsb >>  8 & 0xFF];
+        final float v = UNIT[ahsb       & 0xFF];
+        return pack(component(0, h, s, v), component(1, h, s, v), component(2, h, s, v), UNIT[ahsb >>> 24]);
+    }
+
+    /**
+     * Converts RGB color components into HSB components, writing them into <code>ahsb</code>.
+     * The arrays may be the same array.
+     *
+     * @param argb Float array of color components (assumed ARGB format)
+     * @param ahsb Float array to write to, in the format { alpha, hue, saturation, brightness }
+     * @return The given <code>ahsb</code> array
+     * @throws IllegalArgumentException if either array is smaller than four values, or if
+     *                                  the RGB components are not between 0.0f and 1.0f
+     */
+    public static float[] rgbToHSB(float[] argb, float[] ahsb) throws IllegalArgumentException {
+        if(argb.length < 4 || ahsb.length < 4)
+            throw new IllegalArgumentException("RGB float array must have 4 components");
+        for(int i = 1; i < 4; i++) {
+            if(argb[i] < 0f || argb[i] > 1f)
+                throw new IllegalArgumentException("RGB components must be between 0.0f and 1.0f, inclusive");
+        }
+
+        final float r = argb[1], g = argb[2], b = argb[3];
+        ahsb[0] = argb[0];
+        ahsb[1] = hue(r, g, b);
+        ahsb[2] = saturation(r, g, b);
+        ahsb[3] = brightness(r, g, b);
+        return ahsb;
+    }
+
+    /**
+     * Converts HSB components into RGB color components, writing them into <code>argb</code>.
+     * The arrays may be the same array.
+     *
+     * @param ahsb Float array of HSB components (assumed AHSB format)
+     * @param argb Float array to write to, in the format { alpha, red, green, blue }
+     * @return The given <code>argb</code> array
+     * @throws IllegalArgumentException if either array is smaller than four values
+     */
+    public static float[] hsbToRGB(float[] ahsb, float[] argb) throws IllegalArgumentException {
+        if(ahsb.length < 4 || argb.length < 4)
+            throw new IllegalArgumentException("HSL float array must have 4 components");
+
+        final float h = ahsb[1], s = ahsb[2], v = ahsb[3];
+        argb[0] = ahsb[0];
+        argb[1] = component(0, h, s, v);
+        argb[2] = component(1, h, s, v);
+        argb[3] = component(2, h, s, v);
+        return argb;
+    }
+}
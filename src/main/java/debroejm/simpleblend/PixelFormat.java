@@ -0,0 +1,68 @@
+package debroejm.simpleblend;
+
+/**
+ * Enumeration representing the order of the channels within a 32-bit pixel,
+ * from the most to the least significant byte. The library works on ARGB
+ * pixels; pixels in other formats are converted as they are read and written.
+ */
+public enum PixelFormat {
+
+    ARGB,
+    RGBA,
+    ABGR,
+    BGRA,
+
+    /**
+     * ARGB with the alpha byte unused. Pixels read as opaque, and are written with an alpha of 0.
+     */
+    XRGB,
+
+    /**
+     * ABGR with the alpha byte unused. Pixels read as opaque, and are written with an alpha of 0.
+     */
+    XBGR,
+
+    /**
+     * ARGB with premultiplied alpha, where each color component is already scaled by
+     * the alpha. Converting to and from ARGB loses precision at low alphas.
+     *
+     * @see PackedColor#premultiply(int)
+     */
+    ARGB_PRE;
+
+    /**
+     * Converts a pixel in this format to a 32-bit ARGB pixel.
+     *
+     * @param pixel 32-bit pixel in this format
+     * @return 32-bit ARGB pixel
+     */
+    public int toARGB(final int pixel) {
+        switch(this) {
+            case RGBA: return Integer.rotateRight(pixel, 8);
+            case ABGR: return pixel & 0xFF00FF00 | (pixel << 16 & 0x00FF0000) | (pixel >> 16 & 0xFF);
+            case BGRA: return Integer.reverseBytes(pixel);
+            case XRGB: return pixel | 0xFF000000;
+            case XBGR: return 0xFF000000 | (pixel << 16 & 0x00FF0000) | (pixel & 0x0000FF00) | (pixel >> 16 & 0xFF);
+            case ARGB_PRE: return PackedColor.unpremultiply(pixel);
+            default:   return pixel;
+        }
+    }
+
+    /**
+     * Converts a 32-bit ARGB pixel to a pixel in this format.
+     *
+     * @param argb 32-bit ARGB pixel
+     * @return 32-bit pixel in this format
+     */
+    public int fromARGB(final int argb) {
+        switch(this) {
+            case RGBA: return Integer.rotateLeft(argb, 8);
+            case ABGR: return argb & 0xFF00FF00 | (argb << 16 & 0x00FF0000) | (argb >> 16 & 0xFF);
+            case BGRA: return Integer.reverseBytes(argb);
+            case XRGB: return argb & 0x00FFFFFF;
+            case XBGR: return (argb << 16 & 0x00FF0000) | (argb & 0x0000FF00) | (argb >> 16 & 0xFF);
+            case ARGB_PRE: return PackedColor.premultiply(argb);
+            default:   return argb;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package debroejm.simpleblend;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A rectangle of 32-bit pixels, backed either by an int array on the heap or by an
+ * IntBuffer, such as a view of a direct ByteBuffer filled by native code. Rows are
+ * <code>stride</code> pixels apart in the backing storage, so a PixelSurface can be a
+ * window into a larger image; {@link #subSurface(int, int, int, int)} creates such
+ * windows without copying any pixels.
+ *
+ * The blending, curve and scanning entry points accept PixelSurfaces. Surfaces
+ * backed by an array of ARGB pixels are processed in place, and all other surfaces
+ * are processed a row at a time through a small scratch buffer, converting from and
+ * to their {@link PixelFormat}, so no whole-image copy is ever made.
+ *
+ * Other pixel storage can be adapted by extending PixelSurface and implementing
+ * its pixel, row and sub-surface accessors.
+ */
+public abstract class PixelSurface {
+
+    /**
+     * Action run for every row of a PixelSurface by {@link #forEachRow(RowAction)}.
+     */
+    @FunctionalInterface
+    public interface RowAction {
+        /**
+         * Processes a row of 32-bit ARGB pixels. The pixels must not be modified.
+         *
+         * @param y Row index within the surface
+         * @param pixels Integer array holding the row
+         * @param offset Index of the row's first pixel
+         * @param length Number of pixels in the row
+         */
+        void run(int y, int[] pixels, int offset, int length);
+    }
+
+    final int width, height;
+    final int offset, stride;
+    final PixelFormat format;
+
+    /**
+     * Creates a PixelSurface over pixel data of the given <code>capacity</code>.
+     *
+     * @param capacity Amount of pixels in the backing storage
+     * @param offset Index of the top left pixel
+     * @param stride Row stride of the pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @param format Format of the pixels
+     */
+    protected PixelSurface(
+            final int capacity,
+            final int offset, final int stride,
+            final int width, final int height,
+            final PixelFormat format
+    ) {
+        if(format == null)
+            throw new NullPointerException();
+        if(width < 0 || height < 0 || offset < 0 || stride < width)
+            throw new IllegalArgumentException("Invalid surface dimensions");
+        if(height > 0 && width > 0 && offset + (long) (height - 1) * stride + width > capacity)
+            throw new IllegalArgumentException("Surface does not fit in its pixel data");
+        this.width = width; this.height = height;
+        this.offset = offset; this.stride = stride;
+        this.format = format;
+    }
+
+    /**
+     * Wraps an array of ARGB pixels, in rows of <code>width</code> pixels.
+     *
+     * @param pixels Integer array of 32-bit ARGB pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @return PixelSurface backed by the array
+     */
+    public static PixelSurface wrap(int[] pixels, int width, int height) {
+        return wrap(pixels, 0, width, width, height, PixelFormat.ARGB);
+    }
+
+    /**
+     * Wraps a rectangle of an array of pixels.
+     *
+     * @param pixels Integer array of pixel data
+     * @param offset Index of the top left pixel
+     * @param stride Row stride of the pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @param format Format of the pixels
+     * @return PixelSurface backed by the array
+     */
+    public static PixelSurface wrap(int[] pixels, int offset, int stride, int width, int height, PixelFormat format) {
+        return new HeapSurface(pixels, offset, stride, width, height, format);
+    }
+
+    /**
+     * Wraps an IntBuffer of ARGB pixels, in rows of <code>width</code> pixels, starting
+     * at index 0 of the buffer.
+     *
+     * @param buffer IntBuffer of 32-bit ARGB pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @return PixelSurface backed by the buffer
+     */
+    public static PixelSurface wrap(IntBuffer buffer, int width, int height) {
+        return wrap(buffer, 0, width, width, height, PixelFormat.ARGB);
+    }
+
+    /**
+     * Wraps a rectangle of an IntBuffer of pixels. Offsets are absolute indices into the
+     * buffer; its position and limit are ignored. Buffers backed by an accessible array
+     * are wrapped as that array.
+     *
+     * @param buffer IntBuffer of pixel data
+     * @param offset Index of the top left pixel
+     * @param stride Row stride of the pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @param format Format of the pixels
+     * @return PixelSurface backed by the buffer
+     */
+    public static PixelSurface wrap(IntBuffer buffer, int offset, int stride, int width, int height, PixelFormat format) {
+        if(buffer.hasArray())
+            return new HeapSurface(buffer.array(), buffer.arrayOffset() + offset, stride, width, height, format);
+        return new DirectSurface(buffer, offset, stride, width, height, format);
+    }
+
+    /**
+     * Wraps the pixels of a ByteBuffer, starting at its current position. Every four bytes
+     * are read as an int in the buffer's byte order, so for example a little-endian buffer
+     * of bytes in B, G, R, A order holds ARGB pixels.
+     *
+     * @param buffer ByteBuffer of pixel data
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @param format Format of the pixels, as ints in the buffer's byte order
+     * @return PixelSurface backed by the buffer
+     */
+    public static PixelSurface wrap(ByteBuffer buffer, int width, int height, PixelFormat format) {
+        return new DirectSurface(buffer.asIntBuffer(), 0, width, width, height, format);
+    }
+
+    /**
+     * Allocates a transparent ARGB surface on the heap.
+     *
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @return New PixelSurface
+     */
+    public static PixelSurface allocate(int width, int height) {
+        return wrap(new int[Math.multiplyExact(width, height)], width, height);
+    }
+
+    /**
+     * Allocates a transparent ARGB surface in a direct ByteBuffer, outside of the heap.
+     *
+     * @param width Width of the surface in pixels
+     * @param height Height of the surface in pixels
+     * @return New PixelSurface
+     */
+    public static PixelSurface allocateDirect(int width, int height) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.multiplyExact(Math.multiplyExact(width, height), 4));
+        return wrap(buffer.order(ByteOrder.nativeOrder()), width, height, PixelFormat.ARGB);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getStride() { return stride; }
+    public PixelFormat getFormat() { return format; }
+
+    /**
+     * Retrieves a single pixel.
+     *
+     * @param x X position of the pixel
+     * @param y Y position of the pixel
+     * @return 32-bit ARGB pixel
+     */
+    public abstract int getPixel(int x, int y);
+
+    /**
+     * Sets a single pixel.
+     *
+     * @param x X position of the pixel
+     * @param y Y position of the pixel
+     * @param argb 32-bit ARGB pixel
+     */
+    public abstract void setPixel(int x, int y, int argb);
+
+    /**
+     * Copies a run of pixels of a row into an array, as ARGB pixels.
+     *
+     * @param x X position of the first pixel
+     * @param y Row to copy from
+     * @param length Number of pixels to copy
+     * @param dst Integer array to copy to
+     * @param dstOffset Index to copy the first pixel to
+     */
+    public abstract void getRow(int x, int y, int length, int[] dst, int dstOffset);
+
+    /**
+     * Copies a run of ARGB pixels from an array into a row.
+     *
+     * @param x X position of the first pixel
+     * @param y Row to copy to
+     * @param length Number of pixels to copy
+     * @param src Integer array of 32-bit ARGB pixels to copy from
+     * @param srcOffset Index of the first pixel to copy
+     */
+    public abstract void setRow(int x, int y, int length, int[] src, int srcOffset);
+
+    /**
+     * Creates a view of a rectangle of this surface. The view shares this surface's pixels,
+     * so changes to either are visible in both.
+     *
+     * @param x X position of the rectangle
+     * @param y Y position of the rectangle
+     * @param width Width of the rectangle in pixels
+     * @param height Height of the rectangle in pixels
+     * @return PixelSurface view of the rectangle
+     */
+    public abstract PixelSurface subSurface(int x, int y, int width, int height);
+
+    /**
+     * Determines whether this surface is backed by an array of ARGB pixels, which can be
+     * processed in place through {@link #array()}, {@link #arrayOffset()} and the stride.
+     *
+     * @return True if this surface is backed by an array of ARGB pixels
+     */
+    public boolean hasArray() {
+        return false;
+    }
+
+    /**
+     * Retrieves the array of ARGB pixels backing this surface.
+     *
+     * @return Integer array of pixel data
+     * @throws UnsupportedOperationException if this surface is not backed by an array of ARGB pixels
+     */
+    public int[] array() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Retrieves the index of this surface's top left pixel in its backing array.
+     *
+     * @return Integer index
+     * @throws UnsupportedOperationException if this surface is not backed by an array of ARGB pixels
+     */
+    public int arrayOffset() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Runs an action for every row of this surface, from top to bottom, as ARGB pixels.
+     * Rows of surfaces backed by an array of ARGB pixels are handed over in place; other
+     * rows are copied into a single reused scratch buffer.
+     *
+     * @param action RowAction to run for every row
+     */
+    public void forEachRow(final RowAction action) {
+        if(hasArray()) {
+            final int[] pixels = array();
+            for(int y = 0; y < height; y++)
+                action.run(y, pixels, arrayOffset() + y*stride, width);
+        } else {
+            final int[] row = new int[width];
+            for(int y = 0; y < height; y++) {
+                getRow(0, y, width, row, 0);
+                action.run(y, row, 0, width);
+            }
+        }
+    }
+
+    /**
+     * Checks that a rectangle lies within this surface.
+     *
+     * @param x X position of the rectangle
+     * @param y Y position of the rectangle
+     * @param width Width of the rectangle in pixels
+     * @param height Height of the rectangle in pixels
+     * @throws IndexOutOfBoundsException if the rectangle is not within this surface
+     */
+    protected void checkRegion(final int x, final int y, final int width, final int height) {
+        if(x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height)
+            throw new IndexOutOfBoundsException("Region is outside of the surface");
+    }
+
+    /**
+     * Checks that another surface has the same width and height as this one.
+     *
+     * @param other PixelSurface to compare with
+     * @throws IllegalArgumentException if the surfaces are different sizes
+     */
+    public void checkSameSize(final PixelSurface other) {
+        if(other.width != width || other.height != height)
+            throw new IllegalArgumentException("Surfaces are different sizes");
+    }
+
+    /**
+     * Blends a rectangle of <code>top</code> over the same rectangle of <code>bottom</code>,
+     * writing the results into <code>dst</code>.
+     */
+    static void blend(
+            final BlendAlgorithm algorithm,
+            final PixelSurface top, final PixelSurface bottom, final PixelSurface dst,
+            final int x, final int y, final int width, final int height
+    ) {
+        if(top.hasArray() && bottom.hasArray() && dst.hasArray()) {
+            algorithm.blend(
+                    top.array(), top.arrayOffset() + y*top.stride + x, top.stride,
+                    bottom.array(), bottom.arrayOffset() + y*bottom.stride + x, bottom.stride,
+                    dst.array(), dst.arrayOffset() + y*dst.stride + x, dst.stride,
+                    width, height
+            );
+            return;
+        }
+        final int[] topRow = new int[width], bottomRow = new int[width], dstRow = new int[width];
+        for(int row = y; row < y + height; row++) {
+            top.getRow(x, row, width, topRow, 0);
+            bottom.getRow(x, row, width, bottomRow, 0);
+            algorithm.blend(topRow, 0, bottomRow, 0, dstRow, 0, width);
+            dst.setRow(x, row, width, dstRow, 0);
+        }
+    }
+}
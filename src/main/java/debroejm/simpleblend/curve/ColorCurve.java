@@ -1,16 +1,30 @@
 package debroejm.simpleblend.curve;
 
-import debroejm.simpleblend.util.ExponentialFunction;
-
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * An individual color curve used for a single channel.
+ *
+ * Besides evaluating the curve directly with {@link #at(float)}, the curve can
+ * be sampled through compiled lookup tables: one with an entry for every 8-bit
+ * component, and one with a configurable resolution for float values. The
+ * tables are built the first time they are needed, and rebuilt after the
+ * curve is changed.
+ *
+ * Edits are copy-on-write: every edit publishes a new, never modified set of
+ * points, so evaluating the curve never locks and never observes a partial
+ * edit. To share a curve between threads while it is being edited, hand out
+ * the immutable {@link CompiledCurve} returned by {@link #snapshot()}.
  */
 public class ColorCurve {
 
+    /**
+     * Default amount of intervals in the float lookup table.
+     */
+    public static final int DEFAULT_RESOLUTION = 4096;
+
     private static float clamp(final float value, final float lower, final float upper) {
         return value < lower ? lower : (value > upper ? upper : value);
     }
@@ -20,7 +34,6 @@ public class ColorCurve {
      */
     public final class Point implements Cloneable {
         public final float value, weight;
-        ExponentialFunction function = null;
         Point(final float value, final float weight) {
             this.value = value; this.weight = weight;
         }
@@ -29,15 +42,29 @@ public class ColorCurve {
         }
     }
 
-    private final TreeMap<Float, Point> points;
-    private ExponentialFunction baseFunction = null;
+    /**
+     * A single version of the curve. The points map is never modified once a State
+     * is created; edits create a new State instead.
+     */
+    private static final class State {
+        final TreeMap<Float, Point> points;
+        final int resolution;
+        volatile CompiledCurve compiled = null;
+
+        State(final TreeMap<Float, Point> points, final int resolution) {
+            this.points = points;
+            this.resolution = resolution;
+        }
+    }
+
+    private volatile State state;
 
     public ColorCurve() {
-        this.points = new TreeMap<>();
+        this(new TreeMap<>());
     }
 
     private ColorCurve(final TreeMap<Float, Point> points) {
-        this.points = points;
+        this.state = new State(points, DEFAULT_RESOLUTION);
     }
 
     /**
@@ -58,38 +85,32 @@ public class ColorCurve {
      * @param y Float y position
      * @param weight Float weight value
      */
-    public void addPoint(float x, float y, float weight) {
+    public synchronized void addPoint(float x, float y, float weight) {
         float clampedX = clamp(x, 0.0f, 1.0f);
         float clampedY = clamp(y, 0.0f, 1.0f);
 
-        // Mark the lower function dirty, so it updates
-        final Map.Entry<Float, Point> lower = points.lowerEntry(clampedX);
-        if(lower != null && lower.getValue().function != null) {
-            lower.getValue().function = null;
-        } else if(baseFunction != null) {
-            baseFunction = null;
-        }
-
-        final Point point = new Point(clampedY, weight);
-        points.put(clampedX, point);
+        final TreeMap<Float, Point> points = new TreeMap<>(state.points);
+        points.put(clampedX, new Point(clampedY, weight));
+        state = new State(points, state.resolution);
     }
 
     /**
      * Clears all points from the color curve, and resets it
      * to an identity state.
      */
-    public void clear() {
-        points.clear();
+    public synchronized void clear() {
+        state = new State(new TreeMap<>(), state.resolution);
     }
 
     /**
      * Retrieves an unmodifiable map of Points, where the keys are x values, and the
-     * Point data objects contain the y values and weights.
+     * Point data objects contain the y values and weights. The map is not affected
+     * by later edits.
      *
      * @return Unmodifiable map of point data
      */
     public Map<Float, Point> getPoints() {
-        return Collections.unmodifiableMap(points);
+        return Collections.unmodifiableMap(state.points);
     }
 
     /**
@@ -98,16 +119,84 @@ public class ColorCurve {
      * @param start Float starting x position
      * @param end Float ending x position
      */
-    public void clearRange(float start, float end) {
+    public synchronized void clearRange(float start, float end) {
+        final TreeMap<Float, Point> points = new TreeMap<>(state.points);
         points.keySet().removeIf((val) -> val >= start && val <= end);
+        state = new State(points, state.resolution);
+    }
 
-        // Mark the lower function dirty, so it updates
-        final Map.Entry<Float, Point> lower = points.lowerEntry(start);
-        if(lower != null && lower.getValue().function != null) {
-            lower.getValue().function = null;
-        } else if(baseFunction != null) {
-            baseFunction = null;
+    /**
+     * Retrieves the amount of intervals in the float lookup table.
+     *
+     * @return Integer resolution
+     */
+    public int getResolution() {
+        return state.resolution;
+    }
+
+    /**
+     * Sets the amount of intervals in the float lookup table used by {@link #lookup(float)}.
+     * Higher resolutions are more accurate, but take more memory and longer to build.
+     *
+     * @param resolution Integer resolution, at least 1
+     */
+    public synchronized void setResolution(int resolution) {
+        if(resolution < 1)
+            throw new IllegalArgumentException("Resolution must be at least 1");
+        if(resolution != state.resolution)
+            state = new State(state.points, resolution);
+    }
+
+    /**
+     * Retrieves an immutable, compiled snapshot of the current version of this curve.
+     * Snapshots are cached until the curve is next edited, and can be evaluated by
+     * any number of threads at once without locking.
+     *
+     * @return CompiledCurve of the current points
+     */
+    public CompiledCurve snapshot() {
+        final State current = state;
+        CompiledCurve compiled = current.compiled;
+        if(compiled == null) {
+            compiled = new CompiledCurve(current.points, current.resolution);
+            current.compiled = compiled;
         }
+        return compiled;
+    }
+
+    /**
+     * Retrieves the curve's y value for an 8-bit component from the compiled
+     * component table. The result is exactly <code>at(component / 255.0f)</code>.
+     *
+     * @param component Integer component, between 0 and 255 inclusive
+     * @return Float y position
+     */
+    public float lookup(int component) {
+        return snapshot().lookup(component);
+    }
+
+    /**
+     * Retrieves an approximation of the curve's y value at the given x position,
+     * by linearly interpolating the compiled float table. The accuracy depends on
+     * the table's resolution; see {@link #setResolution(int)}.
+     *
+     * @param x Float x position, clamped between 0.0f and 1.0f
+     * @return Float y position
+     */
+    public float lookup(float x) {
+        return snapshot().lookup(x);
+    }
+
+    /**
+     * Blends an 8-bit color component using the compiled component table.
+     * The result is the same as <code>blend(strength, component / 255.0f)</code>.
+     *
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param component Integer component to blend, between 0 and 255 inclusive
+     * @return Blended float component
+     */
+    public float blendComponent(float strength, int component) {
+        return snapshot().blendComponent(strength, component);
     }
 
     /**
@@ -118,8 +207,7 @@ public class ColorCurve {
      * @return Blended color
      */
     public float blend(float strength, float value) {
-        final float y = at(value);
-        return value + (y-value) * strength;
+        return snapshot().blend(strength, value);
     }
 
     /**
@@ -129,42 +217,39 @@ public class ColorCurve {
      * @return Float y position
      */
     public float at(float x) {
-        float clampedX = x < 0.0f ? 0.0f : (x > 1.0f ? 1.0f : x);
-        final Map.Entry<Float, Point> lower = points.lowerEntry(clampedX);
-        ExponentialFunction function;
-        if(lower == null) {
-            if(baseFunction == null) {
-                final Map.Entry<Float, Point> min = points.firstEntry();
-                final float x2 = min == null ? 1.0f : min.getKey();
-                final float y2 = min == null ? 1.0f : min.getValue().value;
-                final float w2 = min == null ? 1.0f : min.getValue().weight;
-                baseFunction = new ExponentialFunction(
-                        0.0f, 0.0f,
-                        x2, y2,
-                        1.0f / w2
-                );
-            }
-            function = baseFunction;
-        } else {
-            final Point point = lower.getValue();
-            if(point.function == null) {
-                final Map.Entry<Float, Point> next = points.higherEntry(clampedX);
-                final float x2 = next == null ? 1.0f : next.getKey();
-                final float y2 = next == null ? 1.0f : next.getValue().value;
-                final float w2 = next == null ? 1.0f : next.getValue().weight;
-                point.function = new ExponentialFunction(
-                        lower.getKey(), point.value,
-                        x2, y2,
-                        point.weight / w2
-                );
-            }
-            function = point.function;
-        }
-        return clamp(function.apply(clampedX), 0.0f, 1.0f);
+        return snapshot().at(x);
+    }
+
+    /**
+     * Retrieves the curve's y values at every x position in <code>xs</code>, writing
+     * them into <code>ys</code>. Sorted positions are evaluated in a single pass over
+     * the curve's segments.
+     *
+     * @param xs Float array of x positions, clamped between 0.0f and 1.0f
+     * @param ys Float array to write y positions to; may be <code>xs</code>
+     * @see CompiledCurve#at(float[], float[])
+     */
+    public void at(float[] xs, float[] ys) {
+        snapshot().at(xs, ys);
+    }
+
+    /**
+     * Blends every value in <code>values</code> using the color curve, writing the
+     * results into <code>out</code>.
+     *
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param values Float array of values to blend
+     * @param out Float array to write blended values to; may be <code>values</code>
+     * @see CompiledCurve#blend(float, float[], float[])
+     */
+    public void blend(float strength, float[] values, float[] out) {
+        snapshot().blend(strength, values, out);
     }
 
     public ColorCurve normalize() {
 
+        final TreeMap<Float, Point> points = state.points;
+
         if(points.isEmpty())
             return new ColorCurve();
 
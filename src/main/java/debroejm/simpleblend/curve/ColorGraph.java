@@ -1,7 +1,12 @@
 package debroejm.simpleblend.curve;
 
 import debroejm.simpleblend.BlendAlgorithm;
+import debroejm.simpleblend.BlendEngine;
 import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.PixelSurface;
+import debroejm.simpleblend.util.Histogram;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implementation of a BlendAlgorithm that uses color curves
@@ -9,20 +14,30 @@ import debroejm.simpleblend.Channel;
  *
  * New color curves are created in an identity state, where
  * blending them with a color does not affect the color.
+ *
+ * Whole images can be color graded with the <code>apply</code> methods,
+ * which run every pixel through per-channel lookup tables built from the
+ * curves' compiled tables.
+ *
+ * Replacing a Curve is copy-on-write, as is editing one. To share a graph
+ * between render threads while it is being edited, hand out the immutable
+ * {@link CompiledGraph} returned by {@link #freeze()}.
  */
 public class ColorGraph implements BlendAlgorithm {
 
-    private final ColorCurve[] curves;
+    private volatile ColorCurve[] curves;
+    private volatile CompiledGraph frozen = null;
 
     /**
      * Creates a new color curve in an identity state.
      */
     public ColorGraph() {
         int n = Channel.values().length;
-        curves = new ColorCurve[n];
+        final ColorCurve[] curves = new ColorCurve[n];
         for(int i = 0; i < n; i++) {
             curves[i] = new ColorCurve();
         }
+        this.curves = curves;
     }
 
     public ColorGraph(final ColorCurve[] curves) {
@@ -32,7 +47,7 @@ public class ColorGraph implements BlendAlgorithm {
             if(curve == null)
                 throw new NullPointerException();
         }
-        this.curves = curves;
+        this.curves = curves.clone();
     }
 
     /**
@@ -51,11 +66,12 @@ public class ColorGraph implements BlendAlgorithm {
     }
 
     /**
-     * Retrieves all the Curves in this ColorCurve.
+     * Retrieves all the Curves in this ColorCurve. The returned array is a copy;
+     * use {@link #setCurve(Channel, ColorCurve)} to replace a Curve.
      *
      * @return Array of Curves
      */
-    public ColorCurve[] getAllCurves() { return curves; }
+    public ColorCurve[] getAllCurves() { return curves.clone(); }
 
     /**
      * Retrieves a Curve for a specific <code>channel</code>.
@@ -71,10 +87,12 @@ public class ColorGraph implements BlendAlgorithm {
      * @param channel Channel to set Curve for
      * @param curve Curve to set
      */
-    public void setCurve(Channel channel, ColorCurve curve) {
+    public synchronized void setCurve(Channel channel, ColorCurve curve) {
         if(curve == null)
             throw new NullPointerException();
+        final ColorCurve[] curves = this.curves.clone();
         curves[channel.ordinal()] = curve;
+        this.curves = curves;
     }
 
     /**
@@ -87,10 +105,97 @@ public class ColorGraph implements BlendAlgorithm {
             curve.clear();
     }
 
+    /**
+     * Retrieves an immutable, compiled snapshot of the current state of every Curve.
+     * The snapshot is cached until one of the Curves is edited or replaced, and can
+     * be used by any number of threads at once without locking.
+     *
+     * @return CompiledGraph of the current Curves
+     */
+    public CompiledGraph freeze() {
+        final ColorCurve[] current = curves;
+        final CompiledCurve[] snapshots = new CompiledCurve[current.length];
+        for(int i = 0; i < current.length; i++)
+            snapshots[i] = current[i].snapshot();
+        CompiledGraph result = frozen;
+        if(result == null || !result.isCompiledFrom(snapshots)) {
+            result = new CompiledGraph(snapshots);
+            frozen = result;
+        }
+        return result;
+    }
+
+    /**
+     * Applies every channel's curve to a run of 32-bit ARGB pixels, writing the
+     * results into <code>dst</code>. Each component of each pixel is blended as
+     * <code>getCurve(channel).blend(strength, component)</code> would blend it.
+     *
+     * @param src Integer array of source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @see CompiledGraph#apply(int[], int[], float)
+     */
+    public void apply(final int[] src, final int[] dst, final float strength) {
+        freeze().apply(src, dst, strength);
+    }
+
+    /**
+     * Applies every channel's curve to a rectangular region of 32-bit ARGB pixels,
+     * writing the results into <code>dst</code>.
+     *
+     * @see CompiledGraph#apply(int[], int, int, int[], int, int, int, int, float)
+     */
+    public void apply(
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height,
+            final float strength
+    ) {
+        freeze().apply(src, srcOffset, srcStride, dst, dstOffset, dstStride, width, height, strength);
+    }
+
+    /**
+     * Applies every channel's curve to a rectangular region of 32-bit ARGB pixels,
+     * writing the results into <code>dst</code>. The region is split into tiles
+     * that are processed in parallel by the given <code>engine</code>.
+     *
+     * @see CompiledGraph#apply(BlendEngine, int[], int, int, int[], int, int, int, int, float)
+     */
+    public void apply(
+            final BlendEngine engine,
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height,
+            final float strength
+    ) {
+        freeze().apply(engine, src, srcOffset, srcStride, dst, dstOffset, dstStride, width, height, strength);
+    }
+
+    /**
+     * Applies every channel's curve to every pixel of the <code>src</code> surface,
+     * writing the results into the <code>dst</code> surface.
+     *
+     * @see CompiledGraph#apply(PixelSurface, PixelSurface, float)
+     */
+    public void apply(final PixelSurface src, final PixelSurface dst, final float strength) {
+        freeze().apply(src, dst, strength);
+    }
+
+    /**
+     * Applies every channel's curve to every pixel of the <code>src</code> surface,
+     * writing the results into the <code>dst</code> surface, in parallel tiles.
+     *
+     * @see CompiledGraph#apply(BlendEngine, PixelSurface, PixelSurface, float)
+     */
+    public void apply(final BlendEngine engine, final PixelSurface src, final PixelSurface dst, final float strength) {
+        freeze().apply(engine, src, dst, strength);
+    }
+
     public ColorGraph normalize() {
+        final ColorCurve[] current = this.curves;
         final ColorCurve[] curves = new ColorCurve[Channel.values().length];
         for(final Channel channel : Channel.values()) {
-            curves[channel.ordinal()] = this.curves[channel.ordinal()].normalize();
+            curves[channel.ordinal()] = current[channel.ordinal()].normalize();
         }
         return new ColorGraph(curves);
     }
@@ -101,8 +206,83 @@ public class ColorGraph implements BlendAlgorithm {
     //  Static Methods
     // ****************
 
+    /**
+     * Default fraction of pixels clipped at each end of a channel by {@link #scanFromData(int[])}.
+     */
+    public static final float DEFAULT_CLIP = 0.005f;
+
+    /**
+     * Scans pixel data and creates an auto-levels ColorGraph for it, that stretches
+     * each color channel so its darkest and brightest values, ignoring the
+     * {@link #DEFAULT_CLIP} fraction of outliers at either end, cover the full range.
+     * The histogram pass runs in parallel on the common ForkJoinPool.
+     *
+     * @param data Integer array of 32-bit ARGB pixel data
+     * @return Auto-levels ColorGraph
+     */
     public static ColorGraph scanFromData(int[] data) {
+        return scanFromData(data, DEFAULT_CLIP, 0);
+    }
 
-        return null;
+    /**
+     * Scans pixel data and creates an auto-levels ColorGraph for it. See
+     * {@link Histogram#scan(ForkJoinPool, int[], int, int, int)} for the accuracy
+     * of subsampled scans.
+     *
+     * @param data Integer array of 32-bit ARGB pixel data
+     * @param clip Fraction of pixels to clip at each end of a channel
+     * @param maxSamples Maximum amount of pixels to sample, or 0 to sample every pixel
+     * @return Auto-levels ColorGraph
+     */
+    public static ColorGraph scanFromData(int[] data, float clip, int maxSamples) {
+        return fromHistogram(Histogram.scan(ForkJoinPool.commonPool(), data, 0, data.length, maxSamples), clip);
+    }
+
+    /**
+     * Scans a PixelSurface and creates an auto-levels ColorGraph for it, like
+     * {@link #scanFromData(int[])}. Surfaces backed by a single run of an array of
+     * ARGB pixels are scanned in parallel; others are scanned a row at a time.
+     *
+     * @param surface PixelSurface of pixel data
+     * @return Auto-levels ColorGraph
+     */
+    public static ColorGraph scanFromData(PixelSurface surface) {
+        final Histogram histogram;
+        if(surface.hasArray() && surface.getStride() == surface.getWidth()) {
+            histogram = Histogram.scan(ForkJoinPool.commonPool(),
+                    surface.array(), surface.arrayOffset(), surface.getWidth() * surface.getHeight(), 0);
+        } else {
+            histogram = new Histogram();
+            histogram.add(surface);
+        }
+        return fromHistogram(histogram, DEFAULT_CLIP);
+    }
+
+    /**
+     * Creates an auto-levels ColorGraph from a Histogram. Each color channel gets a curve
+     * mapping its <code>clip</code> percentile to 0.0f and its <code>1 - clip</code>
+     * percentile to 1.0f, linear in between. The alpha curve is left in an identity
+     * state, as are channels that only have a single value.
+     *
+     * @param histogram Histogram of the pixel data
+     * @param clip Fraction of pixels to clip at each end of a channel
+     * @return Auto-levels ColorGraph
+     */
+    public static ColorGraph fromHistogram(Histogram histogram, float clip) {
+        final ColorGraph graph = new ColorGraph();
+        if(histogram.getTotal() == 0)
+            return graph;
+        for(final Channel channel : new Channel[]{ Channel.RED, Channel.GREEN, Channel.BLUE }) {
+            final int low = histogram.percentile(channel, clip);
+            final int high = histogram.percentile(channel, 1.0f - clip);
+            if(low >= high)
+                continue;
+            final ColorCurve curve = graph.getCurve(channel);
+            if(low > 0)
+                curve.addPoint(low / 255.0f, 0.0f);
+            if(high < 255)
+                curve.addPoint(high / 255.0f, 1.0f);
+        }
+        return graph;
     }
 }
@@ -0,0 +1,261 @@
+package debroejm.simpleblend.curve;
+
+import debroejm.simpleblend.util.CurveSegment;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Immutable, compiled snapshot of a ColorCurve. The curve's segments are stored
+ * in flat arrays and its component table is built up front, so a CompiledCurve
+ * can be evaluated by any number of threads at once without locking. The float
+ * lookup table is built on first use; building it twice on two threads gives
+ * the same table, so this needs no locking either.
+ *
+ * CompiledCurves are retrieved with {@link ColorCurve#snapshot()}, and are not
+ * affected by later changes to the ColorCurve they were taken from.
+ */
+public final class CompiledCurve {
+
+    /**
+     * Amount of values evaluated at once by the array forms of <code>at</code> and <code>blend</code>.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    private static float clamp(final float value, final float lower, final float upper) {
+        return value < lower ? lower : (value > upper ? upper : value);
+    }
+
+    /**
+     * X positions of every point, in ascending order.
+     */
+    private final float[] keys;
+
+    /**
+     * Segment functions. The first segment runs from the origin to the first point,
+     * and segment <code>i + 1</code> starts at the point at <code>keys[i]</code>.
+     */
+    private final CurveSegment[] functions;
+
+    /**
+     * Curve values for every 8-bit component, indexed by the component.
+     */
+    private final float[] componentTable;
+
+    /**
+     * Curve values at <code>resolution + 1</code> evenly spaced x positions.
+     */
+    private volatile float[] resolutionTable = null;
+    private final int resolution;
+
+    CompiledCurve(final SortedMap<Float, ColorCurve.Point> points, final int resolution) {
+        this.resolution = resolution;
+        final int n = points.size();
+        keys = new float[n];
+        final float[] values = new float[n];
+        final float[] weights = new float[n];
+        int i = 0;
+        for(final Map.Entry<Float, ColorCurve.Point> entry : points.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue().value;
+            weights[i] = entry.getValue().weight;
+            i++;
+        }
+
+        functions = new CurveSegment[n + 1];
+        functions[0] = CurveSegment.of(
+                0.0f, 0.0f,
+                n == 0 ? 1.0f : keys[0],
+                n == 0 ? 1.0f : values[0],
+                1.0f / (n == 0 ? 1.0f : weights[0])
+        );
+        for(i = 0; i < n; i++) {
+            final boolean last = i == n - 1;
+            functions[i + 1] = CurveSegment.of(
+                    keys[i], values[i],
+                    last ? 1.0f : keys[i + 1],
+                    last ? 1.0f : values[i + 1],
+                    weights[i] / (last ? 1.0f : weights[i + 1])
+            );
+        }
+
+        componentTable = new float[256];
+        for(i = 0; i < componentTable.length; i++)
+            componentTable[i] = at(i / 255.0f);
+    }
+
+    /**
+     * Retrieves the amount of intervals in the float lookup table.
+     *
+     * @return Integer resolution
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Retrieves the curves y value at the given x position.
+     *
+     * @param x Float x position, clamped between 0.0f and 1.0f
+     * @return Float y position
+     */
+    public float at(float x) {
+        final float clampedX = x < 0.0f ? 0.0f : (x > 1.0f ? 1.0f : x);
+        return clamp(functions[segment(clampedX)].apply(clampedX), 0.0f, 1.0f);
+    }
+
+    /**
+     * Retrieves the curve's y values at every x position in <code>xs</code>, writing
+     * them into <code>ys</code>. The results are exactly what {@link #at(float)} returns
+     * for each position.
+     *
+     * Runs of positions in the same segment are evaluated together. Ascending positions
+     * are found by walking forward through the segments, so a sorted array is evaluated
+     * in a single linear pass; a position before the current segment is found with a
+     * binary search over the flat array of points instead.
+     *
+     * @param xs Float array of x positions, clamped between 0.0f and 1.0f
+     * @param ys Float array to write y positions to, at least as long as <code>xs</code>;
+     *           may be <code>xs</code>
+     */
+    public void at(float[] xs, float[] ys) {
+        evaluate(xs, ys, 0.0f, false);
+    }
+
+    /**
+     * Blends every value in <code>values</code> using the curve, writing the results into
+     * <code>out</code>. The results are exactly what {@link #blend(float, float)} returns
+     * for each value.
+     *
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param values Float array of values to blend
+     * @param out Float array to write blended values to, at least as long as
+     *            <code>values</code>; may be <code>values</code>
+     * @see #at(float[], float[])
+     */
+    public void blend(float strength, float[] values, float[] out) {
+        evaluate(values, out, strength, true);
+    }
+
+    private void evaluate(final float[] xs, final float[] ys, final float strength, final boolean blend) {
+        if(ys.length < xs.length)
+            throw new IllegalArgumentException("Output array is shorter than input array");
+        final float[] scratch = new float[Math.min(xs.length, CHUNK_SIZE)];
+        int segment = 0;
+        for(int base = 0; base < xs.length; base += scratch.length) {
+            final int count = Math.min(scratch.length, xs.length - base);
+            for(int i = 0; i < count; i++) {
+                final float x = xs[base+i];
+                scratch[i] = x < 0.0f ? 0.0f : (x > 1.0f ? 1.0f : x);
+            }
+
+            int start = 0;
+            while(start < count) {
+                final float x = scratch[start];
+                if(!(x > lowerBound(segment))) {
+                    segment = segment(x);
+                } else {
+                    while(segment < keys.length && keys[segment] < x)
+                        segment++;
+                }
+                final float lower = lowerBound(segment);
+                final float upper = segment < keys.length ? keys[segment] : Float.POSITIVE_INFINITY;
+                int end = start + 1;
+                while(end < count && scratch[end] > lower && scratch[end] <= upper)
+                    end++;
+                functions[segment].apply(scratch, start, scratch, start, end - start);
+                start = end;
+            }
+
+            for(int i = 0; i < count; i++) {
+                final float y = clamp(scratch[i], 0.0f, 1.0f);
+                if(blend) {
+                    final float value = xs[base+i];
+                    ys[base+i] = value + (y-value) * strength;
+                } else {
+                    ys[base+i] = y;
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the x position every position in a segment is strictly above.
+     */
+    private float lowerBound(final int segment) {
+        return segment == 0 ? Float.NEGATIVE_INFINITY : keys[segment - 1];
+    }
+
+    /**
+     * Finds the segment of an x position, which is one more than the index of
+     * the last point strictly below it.
+     */
+    private int segment(final float x) {
+        int low = 0, high = keys.length;
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(keys[middle] < x)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Retrieves the curve's y value for an 8-bit component from the compiled
+     * component table. The result is exactly <code>at(component / 255.0f)</code>.
+     *
+     * @param component Integer component, between 0 and 255 inclusive
+     * @return Float y position
+     */
+    public float lookup(int component) {
+        return componentTable[component & 0xFF];
+    }
+
+    /**
+     * Retrieves an approximation of the curve's y value at the given x position,
+     * by linearly interpolating the compiled float table.
+     *
+     * @param x Float x position, clamped between 0.0f and 1.0f
+     * @return Float y position
+     */
+    public float lookup(float x) {
+        float[] table = resolutionTable;
+        if(table == null) {
+            table = new float[resolution + 1];
+            for(int i = 0; i <= resolution; i++)
+                table[i] = at((float) i / resolution);
+            resolutionTable = table;
+        }
+        final float position = clamp(x, 0.0f, 1.0f) * (table.length - 1);
+        final int index = Math.min((int) position, table.length - 2);
+        final float fraction = position - index;
+        return table[index] + (table[index+1] - table[index]) * fraction;
+    }
+
+    /**
+     * Blends a color using the curve.
+     *
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param value Color color to blend
+     * @return Blended color
+     */
+    public float blend(float strength, float value) {
+        final float y = at(value);
+        return value + (y-value) * strength;
+    }
+
+    /**
+     * Blends an 8-bit color component using the compiled component table.
+     * The result is the same as <code>blend(strength, component / 255.0f)</code>.
+     *
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param component Integer component to blend, between 0 and 255 inclusive
+     * @return Blended float component
+     */
+    public float blendComponent(float strength, int component) {
+        final float value = (component & 0xFF) / 255.0f;
+        return value + (componentTable[component & 0xFF] - value) * strength;
+    }
+}
@@ -0,0 +1,216 @@
+package debroejm.simpleblend.curve;
+
+import debroejm.simpleblend.BlendAlgorithm;
+import debroejm.simpleblend.BlendEngine;
+import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.PixelSurface;
+
+/**
+ * Immutable, compiled snapshot of a ColorGraph, made of a CompiledCurve for
+ * every channel. A CompiledGraph can be used by any number of threads at once
+ * without locking, while the ColorGraph it was taken from keeps being edited.
+ *
+ * CompiledGraphs are retrieved with {@link ColorGraph#freeze()}.
+ */
+public final class CompiledGraph implements BlendAlgorithm {
+
+    private final CompiledCurve[] curves;
+
+    CompiledGraph(final CompiledCurve[] curves) {
+        this.curves = curves;
+    }
+
+    /**
+     * Whether this graph was compiled from exactly the given curve snapshots.
+     */
+    boolean isCompiledFrom(final CompiledCurve[] snapshots) {
+        for(int i = 0; i < curves.length; i++) {
+            if(curves[i] != snapshots[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes a color <code>color</code> and applies a color curve to it based on the
+     * <code>strength</code> given, with a <code>strength</code> of <code>1.0f</code>
+     * applying the full curve, and <code>0.0f</code> applying no curve.
+     *
+     * @param channel Channel of the color to blend
+     * @param strength How strongly to blend
+     * @param value The color component to blend
+     * @return Blended result
+     */
+    @Override
+    public float blend(Channel channel, float strength, float value) {
+        return curves[channel.ordinal()].blend(strength, value);
+    }
+
+    /**
+     * Retrieves the compiled Curve for a specific <code>channel</code>.
+     *
+     * @param channel Channel to get Curve for
+     * @return CompiledCurve for specific channel
+     */
+    public CompiledCurve getCurve(Channel channel) { return curves[channel.ordinal()]; }
+
+    /**
+     * Applies every channel's curve to a run of 32-bit ARGB pixels, writing the
+     * results into <code>dst</code>. Each component of each pixel is blended as
+     * <code>getCurve(channel).blend(strength, component)</code> would blend it.
+     *
+     * @param src Integer array of source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     */
+    public void apply(final int[] src, final int[] dst, final float strength) {
+        apply(src, 0, src.length, dst, 0, src.length, src.length, 1, strength);
+    }
+
+    /**
+     * Applies every channel's curve to a rectangular region of 32-bit ARGB pixels,
+     * writing the results into <code>dst</code>.
+     *
+     * @param src Integer array of source pixel data
+     * @param srcOffset Index of the first source pixel
+     * @param srcStride Row stride of the source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     */
+    public void apply(
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height,
+            final float strength
+    ) {
+        final int[] table = compile(strength);
+        apply(table, src, srcOffset, srcStride, dst, dstOffset, dstStride, width, height);
+    }
+
+    /**
+     * Applies every channel's curve to a rectangular region of 32-bit ARGB pixels,
+     * writing the results into <code>dst</code>. The region is split into tiles
+     * that are processed in parallel by the given <code>engine</code>.
+     *
+     * @param engine BlendEngine to process tiles with
+     * @param src Integer array of source pixel data
+     * @param srcOffset Index of the first source pixel
+     * @param srcStride Row stride of the source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     */
+    public void apply(
+            final BlendEngine engine,
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height,
+            final float strength
+    ) {
+        final int[] table = compile(strength);
+        engine.forEachTile(width, height, (x, y, w, h) -> apply(
+                table,
+                src, srcOffset + y*srcStride + x, srcStride,
+                dst, dstOffset + y*dstStride + x, dstStride,
+                w, h
+        ));
+    }
+
+    /**
+     * Applies every channel's curve to every pixel of the <code>src</code> surface,
+     * writing the results into the <code>dst</code> surface. Surfaces backed by
+     * arrays of ARGB pixels are processed in place; others a row at a time.
+     *
+     * @param src PixelSurface of source pixel data
+     * @param dst PixelSurface to write results to, the same size as <code>src</code>;
+     *            may be <code>src</code>
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     */
+    public void apply(final PixelSurface src, final PixelSurface dst, final float strength) {
+        src.checkSameSize(dst);
+        apply(compile(strength), src, dst, 0, 0, src.getWidth(), src.getHeight());
+    }
+
+    /**
+     * Applies every channel's curve to every pixel of the <code>src</code> surface,
+     * writing the results into the <code>dst</code> surface. The surface is split
+     * into tiles that are processed in parallel by the given <code>engine</code>.
+     *
+     * @param engine BlendEngine to process tiles with
+     * @param src PixelSurface of source pixel data
+     * @param dst PixelSurface to write results to, the same size as <code>src</code>;
+     *            may be <code>src</code>
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     */
+    public void apply(final BlendEngine engine, final PixelSurface src, final PixelSurface dst, final float strength) {
+        src.checkSameSize(dst);
+        final int[] table = compile(strength);
+        engine.forEachTile(src.getWidth(), src.getHeight(), (x, y, w, h) -> apply(table, src, dst, x, y, w, h));
+    }
+
+    private static void apply(
+            final int[] table,
+            final PixelSurface src, final PixelSurface dst,
+            final int x, final int y, final int width, final int height
+    ) {
+        if(src.hasArray() && dst.hasArray()) {
+            apply(
+                    table,
+                    src.array(), src.arrayOffset() + y*src.getStride() + x, src.getStride(),
+                    dst.array(), dst.arrayOffset() + y*dst.getStride() + x, dst.getStride(),
+                    width, height
+            );
+            return;
+        }
+        final int[] row = new int[width];
+        for(int r = y; r < y + height; r++) {
+            src.getRow(x, r, width, row, 0);
+            apply(table, row, 0, width, row, 0, width, width, 1);
+            dst.setRow(x, r, width, row, 0);
+        }
+    }
+
+    /**
+     * Builds a table holding the final, already shifted component for every
+     * channel and every 8-bit input, indexed by <code>channel * 256 + component</code>.
+     */
+    private int[] compile(final float strength) {
+        final int[] table = new int[256 * 4];
+        for(final Channel channel : Channel.values()) {
+            final CompiledCurve curve = curves[channel.ordinal()];
+            final int shift = 24 - channel.ordinal() * 8;
+            for(int i = 0; i < 256; i++) {
+                float value = curve.blendComponent(strength, i);
+                value = value < 0.0f ? 0.0f : (value > 1.0f ? 1.0f : value);
+                table[channel.ordinal() * 256 + i] = ((int)(value * 255) & 0xFF) << shift;
+            }
+        }
+        return table;
+    }
+
+    private static void apply(
+            final int[] table,
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height
+    ) {
+        for(int y = 0; y < height; y++) {
+            final int srcRow = srcOffset + y*srcStride;
+            final int dstRow = dstOffset + y*dstStride;
+            for(int x = 0; x < width; x++) {
+                final int pixel = src[srcRow+x];
+                dst[dstRow+x] = table[pixel >>> 24]
+                        | table[256 + (pixel >> 16 & 0xFF)]
+                        | table[512 + (pixel >>  8 & 0xFF)]
+                        | table[768 + (pixel       & 0xFF)];
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.PixelFormat;
+import debroejm.simpleblend.PixelSurface;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Adapts BufferedImages to PixelSurfaces, so they can be blended, color graded and
+ * scanned in place.
+ *
+ * Images with a single int per pixel, such as <code>TYPE_INT_ARGB</code>,
+ * <code>TYPE_INT_ARGB_PRE</code>, <code>TYPE_INT_RGB</code> and
+ * <code>TYPE_INT_BGR</code>, are wrapped around their
+ * DataBufferInt with its offset and scanline stride, so no pixels are copied. Images
+ * with interleaved sRGB bytes, such as <code>TYPE_4BYTE_ABGR</code> and
+ * <code>TYPE_3BYTE_BGR</code>, are read and written directly in their byte array.
+ * Every other image falls back to <code>getRGB</code> and <code>setRGB</code> a row at
+ * a time, which is slower but still never copies the whole image.
+ *
+ * Accessing the data array of a BufferedImage stops Java2D from caching it on the
+ * graphics card, which only matters for images drawn to the screen repeatedly.
+ */
+public final class ImageSurfaces {
+
+    private ImageSurfaces() {}
+
+    /**
+     * Wraps a BufferedImage as a PixelSurface that shares its pixels. Changes through
+     * the surface are visible in the image, and the other way around. Sub-images created
+     * with <code>getSubimage</code> are wrapped with their own offset.
+     *
+     * @param image BufferedImage to wrap
+     * @return PixelSurface backed by the image's pixels
+     */
+    public static PixelSurface wrap(final BufferedImage image) {
+        final WritableRaster raster = image.getRaster();
+        final SampleModel model = raster.getSampleModel();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final int x = raster.getMinX() - raster.getSampleModelTranslateX();
+        final int y = raster.getMinY() - raster.getSampleModelTranslateY();
+
+        if(buffer instanceof DataBufferInt && buffer.getNumBanks() == 1
+                && model instanceof SinglePixelPackedSampleModel
+                && image.getColorModel() instanceof DirectColorModel) {
+            final SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+            final PixelFormat format = formatOf(packed.getBitMasks(), image.getColorModel().isAlphaPremultiplied());
+            if(format != null) {
+                return PixelSurface.wrap(
+                        ((DataBufferInt) buffer).getData(),
+                        buffer.getOffset() + packed.getOffset(x, y),
+                        packed.getScanlineStride(),
+                        image.getWidth(), image.getHeight(),
+                        format
+                );
+            }
+        }
+
+        if(buffer instanceof DataBufferByte && buffer.getNumBanks() == 1
+                && model instanceof PixelInterleavedSampleModel
+                && image.getColorModel() instanceof ComponentColorModel
+                && image.getColorModel().getColorSpace().isCS_sRGB()
+                && !image.getColorModel().isAlphaPremultiplied()
+                && (model.getNumBands() == 3 || model.getNumBands() == 4)) {
+            final ComponentSampleModel interleaved = (ComponentSampleModel) model;
+            return new ByteSurface(
+                    ((DataBufferByte) buffer).getData(),
+                    buffer.getOffset() + y*interleaved.getScanlineStride() + x*interleaved.getPixelStride(),
+                    interleaved.getScanlineStride(), interleaved.getPixelStride(),
+                    interleaved.getBandOffsets(),
+                    image.getWidth(), image.getHeight()
+            );
+        }
+
+        return new ImageSurface(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Finds the PixelFormat of packed int pixels with the given red, green, blue and
+     * optional alpha masks, or <code>null</code> if there is none.
+     */
+    private static PixelFormat formatOf(final int[] masks, final boolean premultiplied) {
+        final boolean alpha = masks.length == 4;
+        if(alpha && masks[3] != 0xFF000000)
+            return null;
+        if(masks[0] == 0x00FF0000 && masks[1] == 0x0000FF00 && masks[2] == 0x000000FF) {
+            if(premultiplied)
+                return alpha ? PixelFormat.ARGB_PRE : null;
+            return alpha ? PixelFormat.ARGB : PixelFormat.XRGB;
+        }
+        if(premultiplied)
+            return null;
+        if(masks[0] == 0x000000FF && masks[1] == 0x0000FF00 && masks[2] == 0x00FF0000)
+            return alpha ? PixelFormat.ABGR : PixelFormat.XBGR;
+        return null;
+    }
+
+    /**
+     * Creates a new <code>TYPE_INT_ARGB</code> BufferedImage with the pixels of a surface.
+     *
+     * @param surface PixelSurface to copy
+     * @return New BufferedImage
+     */
+    public static BufferedImage toImage(final PixelSurface surface) {
+        final BufferedImage image = new BufferedImage(surface.getWidth(), surface.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for(int y = 0; y < surface.getHeight(); y++)
+            surface.getRow(0, y, surface.getWidth(), pixels, y * surface.getWidth());
+        return image;
+    }
+
+    /**
+     * PixelSurface over interleaved sRGB bytes, with three or four bands in red, green,
+     * blue and alpha order at the given band offsets.
+     */
+    private static final class ByteSurface extends PixelSurface {
+        private final byte[] data;
+        private final int start, scanline, pixelStride;
+        private final int red, green, blue, alpha;
+
+        ByteSurface(
+                final byte[] data,
+                final int start, final int scanline, final int pixelStride,
+                final int[] bandOffsets,
+                final int width, final int height
+        ) {
+            super(Integer.MAX_VALUE, 0, width, width, height, PixelFormat.ARGB);
+            this.data = data;
+            this.start = start; this.scanline = scanline; this.pixelStride = pixelStride;
+            this.red = bandOffsets[0]; this.green = bandOffsets[1]; this.blue = bandOffsets[2];
+            this.alpha = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+        }
+
+        private int index(final int x, final int y) {
+            return start + y*scanline + x*pixelStride;
+        }
+
+        private int read(final int i) {
+            return (alpha < 0 ? 0xFF000000 : (data[i + alpha] & 0xFF) << 24)
+                    | (data[i + red] & 0xFF) << 16
+                    | (data[i + green] & 0xFF) << 8
+                    | (data[i + blue] & 0xFF);
+        }
+
+        private void write(final int i, final int argb) {
+            if(alpha >= 0)
+                data[i + alpha] = (byte) (argb >>> 24);
+            data[i + red] = (byte) (argb >> 16);
+            data[i + green] = (byte) (argb >> 8);
+            data[i + blue] = (byte) argb;
+        }
+
+        @Override
+        public int getPixel(final int x, final int y) {
+            checkRegion(x, y, 1, 1);
+            return read(index(x, y));
+        }
+
+        @Override
+        public void setPixel(final int x, final int y, final int argb) {
+            checkRegion(x, y, 1, 1);
+            write(index(x, y), argb);
+        }
+
+        @Override
+        public void getRow(final int x, final int y, final int length, final int[] dst, final int dstOffset) {
+            checkRegion(x, y, length, 1);
+            int i = index(x, y);
+            for(int n = 0; n < length; n++, i += pixelStride)
+                dst[dstOffset+n] = read(i);
+        }
+
+        @Override
+        public void setRow(final int x, final int y, final int length, final int[] src, final int srcOffset) {
+            checkRegion(x, y, length, 1);
+            int i = index(x, y);
+            for(int n = 0; n < length; n++, i += pixelStride)
+                write(i, src[srcOffset+n]);
+        }
+
+        @Override
+        public PixelSurface subSurface(final int x, final int y, final int width, final int height) {
+            checkRegion(x, y, width, height);
+            return new ByteSurface(
+                    data, index(x, y), scanline, pixelStride,
+                    alpha < 0 ? new int[]{ red, green, blue } : new int[]{ red, green, blue, alpha },
+                    width, height
+            );
+        }
+    }
+
+    /**
+     * PixelSurface over any BufferedImage, through its <code>getRGB</code> and
+     * <code>setRGB</code> methods.
+     */
+    private static final class ImageSurface extends PixelSurface {
+        private final BufferedImage image;
+        private final int left, top;
+
+        ImageSurface(final BufferedImage image, final int left, final int top, final int width, final int height) {
+            super(Integer.MAX_VALUE, 0, width, width, height, PixelFormat.ARGB);
+            this.image = image;
+            this.left = left; this.top = top;
+        }
+
+        @Override
+        public int getPixel(final int x, final int y) {
+            checkRegion(x, y, 1, 1);
+            return image.getRGB(left + x, top + y);
+        }
+
+        @Override
+        public void setPixel(final int x, final int y, final int argb) {
+            checkRegion(x, y, 1, 1);
+            image.setRGB(left + x, top + y, argb);
+        }
+
+        @Override
+        public void getRow(final int x, final int y, final int length, final int[] dst, final int dstOffset) {
+            checkRegion(x, y, length, 1);
+            image.getRGB(left + x, top + y, length, 1, dst, dstOffset, length);
+        }
+
+        @Override
+        public void setRow(final int x, final int y, final int length, final int[] src, final int srcOffset) {
+            checkRegion(x, y, length, 1);
+            image.setRGB(left + x, top + y, length, 1, src, srcOffset, length);
+        }
+
+        @Override
+        public PixelSurface subSurface(final int x, final int y, final int width, final int height) {
+            checkRegion(x, y, width, height);
+            return new ImageSurface(image, left + x, top + y, width, height);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.BlendAlgorithm;
+import debroejm.simpleblend.BlendEngine;
+import debroejm.simpleblend.BlendType;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Blends raw 32-bit ARGB files that are too large to load onto the heap. The top,
+ * bottom and output files are memory-mapped one window at a time; each window is
+ * copied into reused int arrays, blended with the bulk methods of a BlendAlgorithm,
+ * and written back to the output, so the heap used stays the same no matter how
+ * large the files are.
+ *
+ * Raw files hold one 4-byte pixel after another, with no header. By default every
+ * pixel is stored in big-endian order, which puts the bytes in A, R, G, B order.
+ *
+ * Mapped windows are released by the garbage collector, not when a blend returns,
+ * so a blend can briefly keep more of the files mapped than a single window.
+ */
+public class MappedBlend {
+
+    /**
+     * Default amount of pixels in a window. Three int arrays of this size take 48MB.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Exit status of the command-line entry point when it is given invalid arguments.
+     */
+    private static final int USAGE_ERROR = 2;
+
+    private final BlendAlgorithm algorithm;
+    private final int windowSize;
+    private final BlendEngine engine;
+    private final ByteOrder order;
+
+    /**
+     * Creates a new MappedBlend that blends on the calling thread with the default window size.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     */
+    public MappedBlend(final BlendAlgorithm algorithm) {
+        this(algorithm, DEFAULT_WINDOW_SIZE, null);
+    }
+
+    /**
+     * Creates a new MappedBlend for big-endian files.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param windowSize Maximum amount of pixels mapped and blended at once
+     * @param engine BlendEngine to blend each window with in parallel, or <code>null</code>
+     *               to blend on the calling thread
+     */
+    public MappedBlend(final BlendAlgorithm algorithm, final int windowSize, final BlendEngine engine) {
+        this(algorithm, windowSize, engine, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Creates a new MappedBlend.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param windowSize Maximum amount of pixels mapped and blended at once
+     * @param engine BlendEngine to blend each window with in parallel, or <code>null</code>
+     *               to blend on the calling thread
+     * @param order Byte order of the pixels in the files
+     */
+    public MappedBlend(
+            final BlendAlgorithm algorithm,
+            final int windowSize,
+            final BlendEngine engine,
+            final ByteOrder order
+    ) {
+        if(algorithm == null || order == null)
+            throw new NullPointerException();
+        if(windowSize < 1 || windowSize > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE / 4);
+        this.algorithm = algorithm;
+        this.windowSize = windowSize;
+        this.engine = engine;
+        this.order = order;
+    }
+
+    /**
+     * Blends every pixel of the <code>top</code> file over the pixel at the same position
+     * in the <code>bottom</code> file, writing the results into the <code>output</code>
+     * file. The output file is created or replaced, and may be one of the input files.
+     *
+     * @param top Path of the raw top file
+     * @param bottom Path of the raw bottom file, the same size as the top file
+     * @param output Path of the raw file to write results to
+     * @return Amount of pixels blended
+     * @throws IOException if a file cannot be read, mapped or written
+     */
+    public long blend(final Path top, final Path bottom, final Path output) throws IOException {
+        try(final FileChannel topChannel = FileChannel.open(top, StandardOpenOption.READ);
+            final FileChannel bottomChannel = FileChannel.open(bottom, StandardOpenOption.READ)) {
+
+            final long size = topChannel.size();
+            if(size != bottomChannel.size())
+                throw new IllegalArgumentException("Top and bottom files are different sizes");
+            if(size % 4 != 0)
+                throw new IllegalArgumentException("File size is not a whole amount of pixels");
+            final long pixels = size / 4;
+
+            try(final FileChannel outputChannel = FileChannel.open(output,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                outputChannel.truncate(size);
+
+                final int length = (int) Math.min(windowSize, pixels);
+                final int[] topPixels = new int[length];
+                final int[] bottomPixels = new int[length];
+                final int[] dstPixels = new int[length];
+
+                for(long start = 0; start < pixels; start += windowSize) {
+                    final int count = (int) Math.min(windowSize, pixels - start);
+                    final long position = start * 4;
+                    window(topChannel, FileChannel.MapMode.READ_ONLY, position, count).get(topPixels, 0, count);
+                    window(bottomChannel, FileChannel.MapMode.READ_ONLY, position, count).get(bottomPixels, 0, count);
+
+                    if(engine == null)
+                        algorithm.blend(topPixels, bottomPixels, dstPixels, 0, count);
+                    else
+                        engine.blend(algorithm, topPixels, bottomPixels, dstPixels, 0, count);
+
+                    window(outputChannel, FileChannel.MapMode.READ_WRITE, position, count).put(dstPixels, 0, count);
+                }
+                outputChannel.force(false);
+            }
+            return pixels;
+        }
+    }
+
+    private IntBuffer window(
+            final FileChannel channel,
+            final FileChannel.MapMode mode,
+            final long position,
+            final int count
+    ) throws IOException {
+        return channel.map(mode, position, (long) count * 4).order(order).asIntBuffer();
+    }
+
+    /**
+     * Command-line entry point. Blends two raw ARGB files into a third:
+     * <pre>
+     * MappedBlend &lt;blend type&gt; &lt;top&gt; &lt;bottom&gt; &lt;output&gt; [--window=pixels] [--threads=count] [--little-endian]
+     * </pre>
+     * Invalid arguments print the usage and exit with status 2.
+     *
+     * @param args Command-line arguments
+     * @throws IOException if a file cannot be read, mapped or written
+     */
+    public static void main(final String[] args) throws IOException {
+        if(args.length < 4) {
+            exitWithUsage("Expected a blend type and three files");
+            return;
+        }
+
+        final BlendType type;
+        try {
+            type = BlendType.valueOf(args[0].toUpperCase(Locale.ROOT));
+        } catch(IllegalArgumentException e) {
+            exitWithUsage("Unknown blend type: " + args[0]);
+            return;
+        }
+
+        int window = DEFAULT_WINDOW_SIZE;
+        int threads = 1;
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        try {
+            for(int i = 4; i < args.length; i++) {
+                final String option = args[i];
+                if(option.startsWith("--window=")) {
+                    window = parseOption(option, "--window=", 1, Integer.MAX_VALUE / 4);
+                } else if(option.startsWith("--threads=")) {
+                    threads = parseOption(option, "--threads=", 1, 0x7FFF);
+                } else if(option.equals("--little-endian")) {
+                    order = ByteOrder.LITTLE_ENDIAN;
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+        } catch(IllegalArgumentException e) {
+            exitWithUsage(e.getMessage());
+            return;
+        }
+
+        final ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            final BlendEngine engine = pool == null ? null : new BlendEngine(pool);
+            final long start = System.nanoTime();
+            final long pixels = new MappedBlend(type.lookup(), window, engine, order)
+                    .blend(Paths.get(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+            System.out.printf("Blended %d pixels in %.1f ms%n", pixels, (System.nanoTime() - start) / 1e6);
+        } finally {
+            if(pool != null)
+                pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses the integer value of an option, between <code>min</code> and <code>max</code> inclusive.
+     */
+    private static int parseOption(final String option, final String prefix, final int min, final int max) {
+        final int value;
+        try {
+            value = Integer.parseInt(option.substring(prefix.length()));
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in option: " + option);
+        }
+        if(value < min || value > max)
+            throw new IllegalArgumentException("Option must be between " + min + " and " + max + ": " + option);
+        return value;
+    }
+
+    private static void exitWithUsage(final String message) {
+        System.err.println(message);
+        usage();
+        System.exit(USAGE_ERROR);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: MappedBlend <blend type> <top> <bottom> <output>"
+                + " [--window=pixels] [--threads=count] [--little-endian]");
+        final StringBuilder types = new StringBuilder("Blend types:");
+        for(final BlendType type : BlendType.values())
+            types.append(' ').append(type.name().toLowerCase(Locale.ROOT));
+        System.err.println(types);
+    }
+}
@@ -0,0 +1,216 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.BlendAlgorithm;
+import debroejm.simpleblend.curve.CompiledGraph;
+import debroejm.simpleblend.util.PixelCloud;
+import debroejm.simpleblend.util.PixelScanner;
+import debroejm.simpleblend.util.ScanSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Blends, color grades and scans PNG images as streams of rows, without ever holding
+ * a whole image in memory.
+ *
+ * Every input image is decoded by a {@link PngReader} on its own thread, and the output
+ * image is encoded by a {@link PngWriter} on another, so inflating, blending and
+ * deflating all overlap. Rows are handed between the threads through bounded queues of
+ * {@link #ROW_DEPTH} reused rows, which keeps the memory used proportional to the
+ * width of the images rather than their size. Blending and grading use the bulk
+ * methods of BlendAlgorithm and CompiledGraph on each row.
+ *
+ * The given streams are read and written, but not closed.
+ */
+public final class PngPipeline {
+
+    /**
+     * Amount of rows buffered between each decoding or encoding thread and the calling thread.
+     */
+    public static final int ROW_DEPTH = 16;
+
+    private PngPipeline() {}
+
+    /**
+     * Processes the current rows of every input into an output row.
+     */
+    @FunctionalInterface
+    private interface RowStep {
+        void run(int[][] rows, int[] dst) throws IOException;
+    }
+
+    /**
+     * Blends every pixel of the <code>top</code> image over the pixel at the same position
+     * in the <code>bottom</code> image, and writes the result to <code>output</code> as a
+     * PNG image. The output has an alpha channel if either input has one.
+     *
+     * @param algorithm BlendAlgorithm to blend with
+     * @param top InputStream of the top PNG image
+     * @param bottom InputStream of the bottom PNG image, the same size as the top image
+     * @param output OutputStream to write the blended PNG image to
+     * @throws IOException if an image cannot be read, decoded or written
+     */
+    public static void blend(
+            final BlendAlgorithm algorithm,
+            final InputStream top,
+            final InputStream bottom,
+            final OutputStream output
+    ) throws IOException {
+        if(algorithm == null)
+            throw new NullPointerException();
+        final PngReader topReader = new PngReader(top);
+        final PngReader bottomReader = new PngReader(bottom);
+        final int width = topReader.getWidth();
+        if(width != bottomReader.getWidth() || topReader.getHeight() != bottomReader.getHeight())
+            throw new IllegalArgumentException("Top and bottom images are different sizes");
+
+        final PngWriter writer = new PngWriter(output, width, topReader.getHeight(),
+                topReader.hasAlpha() || bottomReader.hasAlpha());
+        run(new PngReader[]{ topReader, bottomReader }, writer,
+                (rows, dst) -> algorithm.blend(rows[0], 0, rows[1], 0, dst, 0, width));
+    }
+
+    /**
+     * Applies every channel's curve of a CompiledGraph to every pixel of the
+     * <code>input</code> image, and writes the result to <code>output</code> as a PNG
+     * image. The output has an alpha channel if the input has one, or if the graph
+     * makes opaque pixels transparent.
+     *
+     * @param graph CompiledGraph to apply
+     * @param strength Strength of the blend, between 0.0f and 1.0f inclusive
+     * @param input InputStream of the PNG image
+     * @param output OutputStream to write the graded PNG image to
+     * @throws IOException if the image cannot be read, decoded or written
+     */
+    public static void apply(
+            final CompiledGraph graph,
+            final float strength,
+            final InputStream input,
+            final OutputStream output
+    ) throws IOException {
+        if(graph == null)
+            throw new NullPointerException();
+        final PngReader reader = new PngReader(input);
+        final int width = reader.getWidth();
+
+        final int[] opaque = { 0xFF000000 };
+        graph.apply(opaque, opaque, strength);
+        final boolean alpha = reader.hasAlpha() || (opaque[0] >>> 24) != 0xFF;
+
+        final PngWriter writer = new PngWriter(output, width, reader.getHeight(), alpha);
+        run(new PngReader[]{ reader }, writer,
+                (rows, dst) -> graph.apply(rows[0], 0, width, dst, 0, width, width, 1, strength));
+    }
+
+    /**
+     * Scans every pixel of the <code>input</code> image with a PixelScanner, in rows from
+     * top to bottom, and returns the PixelClouds representing unique groups of color.
+     * The result is the same as scanning the decoded image in one array.
+     *
+     * @param scanner PixelScanner to scan with
+     * @param input InputStream of the PNG image
+     * @return Collection of PixelClouds
+     * @throws IOException if the image cannot be read or decoded
+     */
+    public static Collection<PixelCloud> scan(final PixelScanner scanner, final InputStream input) throws IOException {
+        final PngReader reader = new PngReader(input);
+        final int width = reader.getWidth();
+        final ScanSession session = scanner.newSession();
+        run(new PngReader[]{ reader }, null, (rows, dst) -> session.add(rows[0], 0, width));
+        return session.getClouds();
+    }
+
+    /**
+     * Decodes every reader on its own thread, runs the step on each set of rows on the
+     * calling thread, and encodes the results on another thread if there is a writer.
+     */
+    private static void run(final PngReader[] readers, final PngWriter writer, final RowStep step) throws IOException {
+        final int width = readers[0].getWidth();
+        final int height = readers[0].getHeight();
+
+        final RowPipe[] inputs = new RowPipe[readers.length];
+        for(int i = 0; i < readers.length; i++) {
+            inputs[i] = new RowPipe(width, ROW_DEPTH);
+            decode(readers[i], inputs[i], i);
+        }
+        final RowPipe output = writer == null ? null : new RowPipe(width, ROW_DEPTH);
+        final Thread encoder = writer == null ? null : encode(writer, output);
+
+        try {
+            final int[][] rows = new int[readers.length][];
+            for(int y = 0; y < height; y++) {
+                for(int i = 0; i < inputs.length; i++) {
+                    rows[i] = inputs[i].receive();
+                    if(rows[i] == null)
+                        throw new IOException("Image ended at row " + y);
+                }
+                final int[] dst = output == null ? null : output.acquire();
+                step.run(rows, dst);
+                for(int i = 0; i < inputs.length; i++)
+                    inputs[i].recycle(rows[i]);
+                if(output != null)
+                    output.send(dst);
+            }
+
+            if(output != null) {
+                output.close();
+                encoder.join();
+                output.check();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(inputs, output, e);
+            throw new IOException("Interrupted while waiting for the encoder", e);
+        } catch(IOException | RuntimeException | Error e) {
+            abort(inputs, output, e);
+            throw e;
+        }
+    }
+
+    private static void abort(final RowPipe[] inputs, final RowPipe output, final Throwable cause) {
+        for(final RowPipe input : inputs)
+            input.abort(cause);
+        if(output != null)
+            output.abort(cause);
+    }
+
+    private static void decode(final PngReader reader, final RowPipe pipe, final int index) {
+        start("png-decoder-" + index, () -> {
+            try {
+                for(int y = 0; y < reader.getHeight(); y++) {
+                    final int[] row = pipe.acquire();
+                    reader.readRow(row, 0);
+                    pipe.send(row);
+                }
+                pipe.close();
+            } catch(Throwable e) {
+                pipe.abort(e);
+            }
+        });
+    }
+
+    private static Thread encode(final PngWriter writer, final RowPipe pipe) {
+        return start("png-encoder", () -> {
+            try {
+                int[] row;
+                while((row = pipe.receive()) != null) {
+                    writer.writeRow(row, 0);
+                    pipe.recycle(row);
+                }
+                writer.finish();
+                pipe.close();
+            } catch(Throwable e) {
+                pipe.abort(e);
+            }
+        });
+    }
+
+    private static Thread start(final String name, final Runnable task) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,455 @@
+package debroejm.simpleblend.io;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a PNG image one row at a time, into 32-bit ARGB pixels. Only the rows
+ * currently being unfiltered are held in memory, so an image of any height is
+ * decoded with memory bounded by its width. IDAT chunks are inflated straight from
+ * the stream, whatever their length; other chunks are read whole, and rejected if
+ * they are longer than {@link #MAX_CHUNK_SIZE} bytes.
+ *
+ * Non-interlaced images with 8-bit RGB, grayscale with alpha and RGBA pixels are
+ * supported, as are grayscale and palette images with 1, 2, 4 or 8-bit pixels.
+ * Palette transparency and RGB and grayscale transparent colors from the tRNS chunk
+ * are applied. Other ancillary chunks, including gamma and color profiles, are
+ * skipped.
+ */
+public class PngReader implements Closeable {
+
+    static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    static final int GRAY = 0, RGB = 2, PALETTE = 3, GRAY_ALPHA = 4, RGBA = 6;
+
+    /**
+     * Maximum length in bytes of a chunk other than IDAT.
+     */
+    public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+
+    private final DataInputStream in;
+    private final int width, height;
+    private final int colorType, bitDepth;
+    private final int bytesPerPixel;
+
+    private final int[] palette;
+    private int transparent = -1;
+
+    private final DataInputStream pixels;
+    private final Inflater inflater = new Inflater();
+    private byte[] previous, current;
+    private int row = 0;
+
+    /**
+     * Creates a new PngReader, reading the header chunks of the image from
+     * <code>in</code>. Pixel data is read as rows are requested.
+     *
+     * @param in InputStream of PNG data, closed when the PngReader is closed
+     * @throws IOException if the stream is not a supported PNG image, or cannot be read
+     */
+    public PngReader(final InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+
+        final byte[] signature = new byte[SIGNATURE.length];
+        this.in.readFully(signature);
+        if(!Arrays.equals(signature, SIGNATURE))
+            throw new IOException("Not a PNG image");
+
+        final Chunk header = nextChunk();
+        if(!header.is("IHDR") || header.data.length != 13)
+            throw new IOException("PNG image does not start with a header");
+        width = header.readInt(0);
+        height = header.readInt(4);
+        bitDepth = header.data[8] & 0xFF;
+        colorType = header.data[9] & 0xFF;
+        if(width <= 0 || height <= 0)
+            throw new IOException("Invalid PNG image size " + width + "x" + height);
+        if(header.data[10] != 0 || header.data[11] != 0)
+            throw new IOException("Unknown PNG compression or filter method");
+        if(header.data[12] != 0)
+            throw new IOException("Interlaced PNG images are not supported");
+
+        final int channels;
+        switch(colorType) {
+            case GRAY: channels = 1; break;
+            case RGB: channels = 3; break;
+            case PALETTE: channels = 1; break;
+            case GRAY_ALPHA: channels = 2; break;
+            case RGBA: channels = 4; break;
+            default: throw new IOException("Unknown PNG color type " + colorType);
+        }
+        final boolean indexed = colorType == PALETTE;
+        final boolean packed = indexed || colorType == GRAY;
+        if(bitDepth != 8 && !(packed && (bitDepth == 1 || bitDepth == 2 || bitDepth == 4)))
+            throw new IOException("Unsupported PNG bit depth " + bitDepth + " for color type " + colorType);
+        bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+
+        final long rowBytes = ((long) width * channels * bitDepth + 7) / 8;
+        if(rowBytes >= Integer.MAX_VALUE)
+            throw new IOException("PNG image is too wide");
+        previous = new byte[(int) rowBytes + 1];
+        current = new byte[(int) rowBytes + 1];
+
+        int[] palette = null;
+        Chunk chunk = nextChunk();
+        while(!chunk.is("IDAT")) {
+            if(chunk.is("PLTE")) {
+                if(chunk.data.length % 3 != 0 || chunk.data.length > 256 * 3)
+                    throw new IOException("Invalid PNG palette");
+                palette = new int[chunk.data.length / 3];
+                for(int i = 0; i < palette.length; i++) {
+                    palette[i] = 0xFF000000
+                            | (chunk.data[i*3] & 0xFF) << 16
+                            | (chunk.data[i*3+1] & 0xFF) << 8
+                            | (chunk.data[i*3+2] & 0xFF);
+                }
+            } else if(chunk.is("tRNS")) {
+                if(indexed) {
+                    if(palette == null || chunk.data.length > palette.length)
+                        throw new IOException("Invalid PNG palette transparency");
+                    for(int i = 0; i < chunk.data.length; i++)
+                        palette[i] = (chunk.data[i] & 0xFF) << 24 | (palette[i] & 0x00FFFFFF);
+                } else if(colorType == GRAY && chunk.data.length == 2) {
+                    final int gray = (chunk.readShort(0) & ((1 << bitDepth) - 1)) * (0xFF / ((1 << bitDepth) - 1));
+                    transparent = gray << 16 | gray << 8 | gray;
+                } else if(colorType == RGB && chunk.data.length == 6) {
+                    transparent = (chunk.readShort(0) & 0xFF) << 16
+                            | (chunk.readShort(2) & 0xFF) << 8
+                            | (chunk.readShort(4) & 0xFF);
+                }
+            } else if(chunk.is("IEND")) {
+                throw new IOException("PNG image has no pixel data");
+            } else if(chunk.isCritical()) {
+                throw new IOException("Unknown critical PNG chunk " + chunk.type);
+            }
+            chunk = nextChunk();
+        }
+        if(indexed && palette == null)
+            throw new IOException("PNG palette image has no palette");
+        this.palette = palette;
+
+        pixels = new DataInputStream(new InflaterInputStream(new DataStream(chunk), inflater, 64 * 1024));
+    }
+
+    /**
+     * Retrieves the width of the image.
+     *
+     * @return Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieves the height of the image.
+     *
+     * @return Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Determines whether or not the image can have pixels that are not fully opaque.
+     *
+     * @return True if the image has an alpha channel or transparent colors
+     */
+    public boolean hasAlpha() {
+        if(colorType == GRAY_ALPHA || colorType == RGBA || transparent >= 0)
+            return true;
+        if(palette != null) {
+            for(final int color : palette) {
+                if((color >>> 24) != 0xFF)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the index of the next row to be read.
+     *
+     * @return Row index, equal to the height once every row has been read
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Decodes the next row of the image into <code>width</code> 32-bit ARGB pixels.
+     *
+     * @param dst Integer array to write the pixels to
+     * @param offset Index to write the first pixel to
+     * @throws IOException if the image data is corrupt or cannot be read
+     * @throws IllegalStateException if every row has already been read
+     */
+    public void readRow(final int[] dst, final int offset) throws IOException {
+        if(row >= height)
+            throw new IllegalStateException("Every row has already been read");
+        if(offset < 0 || offset > dst.length - width)
+            throw new IndexOutOfBoundsException("Row does not fit in the array at offset " + offset);
+
+        final byte[] line = previous;
+        previous = current;
+        current = line;
+        try {
+            pixels.readFully(line);
+        } catch(EOFException e) {
+            throw new IOException("PNG pixel data ends at row " + row, e);
+        }
+        unfilter(line[0], line, previous);
+        convert(line, dst, offset);
+        if(++row == height)
+            inflater.end();
+    }
+
+    /**
+     * Reverses the filter of a row in place. Both rows keep their filter type byte at index 0.
+     */
+    private void unfilter(final int filter, final byte[] line, final byte[] above) throws IOException {
+        final int bpp = bytesPerPixel;
+        final int length = line.length;
+        final boolean first = row == 0;
+        switch(filter) {
+            case 0:
+                break;
+            case 1:
+                for(int i = 1 + bpp; i < length; i++)
+                    line[i] += line[i - bpp];
+                break;
+            case 2:
+                if(!first) {
+                    for(int i = 1; i < length; i++)
+                        line[i] += above[i];
+                }
+                break;
+            case 3:
+                for(int i = 1; i < length; i++) {
+                    final int left = i > bpp ? line[i - bpp] & 0xFF : 0;
+                    final int up = first ? 0 : above[i] & 0xFF;
+                    line[i] += (left + up) >>> 1;
+                }
+                break;
+            case 4:
+                for(int i = 1; i < length; i++) {
+                    final int left = i > bpp ? line[i - bpp] & 0xFF : 0;
+                    final int up = first ? 0 : above[i] & 0xFF;
+                    final int corner = i > bpp && !first ? above[i - bpp] & 0xFF : 0;
+                    line[i] += paeth(left, up, corner);
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type " + filter + " at row " + row);
+        }
+    }
+
+    static int paeth(final int left, final int up, final int corner) {
+        final int estimate = left + up - corner;
+        final int distanceLeft = Math.abs(estimate - left);
+        final int distanceUp = Math.abs(estimate - up);
+        final int distanceCorner = Math.abs(estimate - corner);
+        if(distanceLeft <= distanceUp && distanceLeft <= distanceCorner)
+            return left;
+        return distanceUp <= distanceCorner ? up : corner;
+    }
+
+    /**
+     * Converts an unfiltered row to ARGB pixels.
+     */
+    private void convert(final byte[] line, final int[] dst, final int offset) throws IOException {
+        int i = 1;
+        switch(colorType) {
+            case GRAY:
+                final int scale = 0xFF / ((1 << bitDepth) - 1);
+                for(int x = 0; x < width; x++) {
+                    final int gray = sample(line, x) * scale;
+                    dst[offset+x] = opaque(gray << 16 | gray << 8 | gray);
+                }
+                break;
+            case RGB:
+                for(int x = 0; x < width; x++, i += 3)
+                    dst[offset+x] = opaque((line[i] & 0xFF) << 16 | (line[i+1] & 0xFF) << 8 | (line[i+2] & 0xFF));
+                break;
+            case GRAY_ALPHA:
+                for(int x = 0; x < width; x++, i += 2) {
+                    final int gray = line[i] & 0xFF;
+                    dst[offset+x] = (line[i+1] & 0xFF) << 24 | gray << 16 | gray << 8 | gray;
+                }
+                break;
+            case RGBA:
+                for(int x = 0; x < width; x++, i += 4) {
+                    dst[offset+x] = (line[i+3] & 0xFF) << 24
+                            | (line[i] & 0xFF) << 16
+                            | (line[i+1] & 0xFF) << 8
+                            | (line[i+2] & 0xFF);
+                }
+                break;
+            case PALETTE:
+                for(int x = 0; x < width; x++) {
+                    final int index = sample(line, x);
+                    if(index >= palette.length)
+                        throw new IOException("PNG palette index " + index + " is out of range at row " + row);
+                    dst[offset+x] = palette[index];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Retrieves the sample of a pixel in a row of single-channel pixels, which are
+     * packed into bytes from the most significant bit down when smaller than a byte.
+     */
+    private int sample(final byte[] line, final int x) {
+        if(bitDepth == 8)
+            return line[1 + x] & 0xFF;
+        final int perByte = 8 / bitDepth;
+        final int shift = 8 - bitDepth * (x % perByte + 1);
+        return (line[1 + x / perByte] & 0xFF) >> shift & ((1 << bitDepth) - 1);
+    }
+
+    private int opaque(final int rgb) {
+        return rgb == transparent ? rgb : 0xFF000000 | rgb;
+    }
+
+    /**
+     * Closes the underlying stream. Chunks after the pixel data are not read. The
+     * PngReader releases its decompressor once the last row is read, so a reader of a
+     * stream owned by someone else does not need to be closed.
+     *
+     * @throws IOException if the stream cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Reads the next chunk. The data of an IDAT chunk is left in the stream for
+     * {@link DataStream} to read, while any other chunk is read and checked whole.
+     */
+    private Chunk nextChunk() throws IOException {
+        final int length = in.readInt();
+        if(length < 0)
+            throw new IOException("Invalid PNG chunk length");
+        final byte[] type = new byte[4];
+        in.readFully(type);
+        final String name = new String(type, StandardCharsets.US_ASCII);
+        if(Arrays.equals(type, IDAT))
+            return new Chunk(name, length, null);
+        if(length > MAX_CHUNK_SIZE)
+            throw new IOException("PNG chunk " + name + " is too large");
+        final byte[] data = new byte[length];
+        in.readFully(data);
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        checkCrc(name, crc);
+        return new Chunk(name, length, data);
+    }
+
+    private void checkCrc(final String type, final CRC32 crc) throws IOException {
+        if((int) crc.getValue() != in.readInt())
+            throw new IOException("PNG chunk " + type + " is corrupt");
+    }
+
+    private static final class Chunk {
+        final String type;
+        final int length;
+        final byte[] data;
+
+        /**
+         * @param data Data of the chunk, or <code>null</code> if it is still to be read from the stream
+         */
+        Chunk(final String type, final int length, final byte[] data) {
+            this.type = type;
+            this.length = length;
+            this.data = data;
+        }
+
+        boolean is(final String name) {
+            return type.equals(name);
+        }
+
+        boolean isCritical() {
+            return Character.isUpperCase(type.charAt(0));
+        }
+
+        int readInt(final int at) {
+            return (data[at] & 0xFF) << 24 | (data[at+1] & 0xFF) << 16 | (data[at+2] & 0xFF) << 8 | (data[at+3] & 0xFF);
+        }
+
+        int readShort(final int at) {
+            return (data[at] & 0xFF) << 8 | (data[at+1] & 0xFF);
+        }
+    }
+
+    /**
+     * Stream of the data of consecutive IDAT chunks, read straight from the underlying
+     * stream. The CRC of each chunk is checked once its last byte has been read, before
+     * the next chunk is started.
+     */
+    private final class DataStream extends InputStream {
+        private final CRC32 crc = new CRC32();
+        private int remaining;
+        private boolean ended = false;
+
+        DataStream(final Chunk first) {
+            start(first);
+        }
+
+        private void start(final Chunk chunk) {
+            remaining = chunk.length;
+            crc.reset();
+            crc.update(IDAT);
+        }
+
+        private boolean advance() throws IOException {
+            while(!ended && remaining == 0) {
+                checkCrc("IDAT", crc);
+                final Chunk next = nextChunk();
+                if(next.is("IDAT"))
+                    start(next);
+                else
+                    ended = true;
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!advance())
+                return -1;
+            final int b = in.read();
+            if(b < 0)
+                throw new EOFException("PNG chunk IDAT is truncated");
+            crc.update(b);
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if(len == 0)
+                return 0;
+            if(!advance())
+                return -1;
+            final int count = in.read(b, off, Math.min(len, remaining));
+            if(count < 0)
+                throw new EOFException("PNG chunk IDAT is truncated");
+            crc.update(b, off, count);
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package debroejm.simpleblend.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes a PNG image one row at a time, from 32-bit ARGB pixels. Rows are filtered
+ * and compressed as they are written, and compressed data is written out in IDAT
+ * chunks of {@link #CHUNK_SIZE} bytes, so an image of any height is encoded
+ * with memory bounded by its width.
+ *
+ * Images are written as non-interlaced 8-bit RGBA, or 8-bit RGB when alpha is not
+ * needed. Every row is filtered with the filter type that gives the smallest sum of
+ * absolute differences, as suggested by the PNG specification.
+ */
+public class PngWriter implements Closeable {
+
+    /**
+     * Maximum amount of compressed bytes in a single IDAT chunk.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width, height;
+    private final int bytesPerPixel;
+
+    private final Deflater deflater;
+    private final DeflaterOutputStream pixels;
+    private byte[] previous, current;
+    private final byte[][] filtered = new byte[5][];
+    private int row = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a new PngWriter with the default compression level, writing the header
+     * of the image to <code>out</code>.
+     *
+     * @param out OutputStream to write PNG data to, closed when the PngWriter is closed
+     * @param width Width of the image in pixels
+     * @param height Height of the image in pixels
+     * @param alpha Whether or not to write an alpha channel
+     * @throws IOException if the header cannot be written
+     */
+    public PngWriter(final OutputStream out, final int width, final int height, final boolean alpha) throws IOException {
+        this(out, width, height, alpha, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new PngWriter, writing the header of the image to <code>out</code>.
+     *
+     * @param out OutputStream to write PNG data to, closed when the PngWriter is closed
+     * @param width Width of the image in pixels
+     * @param height Height of the image in pixels
+     * @param alpha Whether or not to write an alpha channel
+     * @param level Compression level, between 0 and 9 inclusive, or -1 for the default
+     * @throws IOException if the header cannot be written
+     */
+    public PngWriter(
+            final OutputStream out,
+            final int width, final int height,
+            final boolean alpha,
+            final int level
+    ) throws IOException {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Image size must be positive");
+        if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between -1 and 9");
+        if((long) width * 4 + 1 >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image is too wide");
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = alpha ? 4 : 3;
+
+        final int length = width * bytesPerPixel + 1;
+        previous = new byte[length];
+        current = new byte[length];
+        for(int i = 0; i < filtered.length; i++) {
+            filtered[i] = new byte[length];
+            filtered[i][0] = (byte) i;
+        }
+
+        this.out.write(PngReader.SIGNATURE);
+        final byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (alpha ? PngReader.RGBA : PngReader.RGB);
+        writeChunk("IHDR", header, header.length);
+
+        deflater = new Deflater(level);
+        pixels = new DeflaterOutputStream(new DataStream(), deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Retrieves the width of the image.
+     *
+     * @return Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieves the height of the image.
+     *
+     * @return Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieves the index of the next row to be written.
+     *
+     * @return Row index, equal to the height once every row has been written
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Encodes the next row of the image from <code>width</code> 32-bit ARGB pixels.
+     * Alpha is dropped if the image has no alpha channel.
+     *
+     * @param src Integer array of pixels
+     * @param offset Index of the first pixel
+     * @throws IOException if the row cannot be written
+     * @throws IllegalStateException if every row has already been written
+     */
+    public void writeRow(final int[] src, final int offset) throws IOException {
+        if(row >= height)
+            throw new IllegalStateException("Every row has already been written");
+        if(offset < 0 || offset > src.length - width)
+            throw new IndexOutOfBoundsException("Row does not fit in the array at offset " + offset);
+
+        final byte[] line = previous;
+        previous = current;
+        current = line;
+        int i = 1;
+        if(bytesPerPixel == 4) {
+            for(int x = 0; x < width; x++) {
+                final int pixel = src[offset+x];
+                line[i++] = (byte) (pixel >> 16);
+                line[i++] = (byte) (pixel >> 8);
+                line[i++] = (byte) pixel;
+                line[i++] = (byte) (pixel >>> 24);
+            }
+        } else {
+            for(int x = 0; x < width; x++) {
+                final int pixel = src[offset+x];
+                line[i++] = (byte) (pixel >> 16);
+                line[i++] = (byte) (pixel >> 8);
+                line[i++] = (byte) pixel;
+            }
+        }
+
+        final byte[] best = filter(line, previous);
+        pixels.write(best, 0, best.length);
+        row++;
+    }
+
+    /**
+     * Filters a row with every filter type, and returns the filtered row with the
+     * smallest sum of absolute differences.
+     */
+    private byte[] filter(final byte[] line, final byte[] above) {
+        final int bpp = bytesPerPixel;
+        final boolean first = row == 0;
+        final byte[] sub = filtered[1], up = filtered[2], average = filtered[3], paeth = filtered[4];
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+        for(int i = 1; i < line.length; i++) {
+            final int value = line[i] & 0xFF;
+            final int left = i > bpp ? line[i - bpp] & 0xFF : 0;
+            final int upper = first ? 0 : above[i] & 0xFF;
+            final int corner = i > bpp && !first ? above[i - bpp] & 0xFF : 0;
+            sub[i] = (byte) (value - left);
+            up[i] = (byte) (value - upper);
+            average[i] = (byte) (value - ((left + upper) >>> 1));
+            paeth[i] = (byte) (value - PngReader.paeth(left, upper, corner));
+            sumNone += Math.abs(line[i]);
+            sumSub += Math.abs(sub[i]);
+            sumUp += Math.abs(up[i]);
+            sumAverage += Math.abs(average[i]);
+            sumPaeth += Math.abs(paeth[i]);
+        }
+
+        final long[] sums = { sumNone, sumSub, sumUp, sumAverage, sumPaeth };
+        int best = 0;
+        for(int filter = 1; filter < sums.length; filter++) {
+            if(sums[filter] < sums[best])
+                best = filter;
+        }
+        if(best == 0) {
+            line[0] = 0;
+            return line;
+        }
+        return filtered[best];
+    }
+
+    /**
+     * Writes the remaining compressed data and the end of the image, without closing
+     * the underlying stream.
+     *
+     * @throws IOException if the data cannot be written
+     * @throws IllegalStateException if not every row has been written
+     */
+    public void finish() throws IOException {
+        if(finished)
+            return;
+        if(row < height)
+            throw new IllegalStateException("Only " + row + " of " + height + " rows have been written");
+        pixels.finish();
+        pixels.flush();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+        deflater.end();
+        finished = true;
+    }
+
+    /**
+     * Finishes the image if every row has been written, and closes the underlying stream.
+     *
+     * @throws IOException if the data cannot be written, or the stream cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if(row >= height)
+                finish();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeChunk(final String type, final byte[] data, final int length) throws IOException {
+        final byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(final byte[] data, final int at, final int value) {
+        data[at] = (byte) (value >>> 24);
+        data[at+1] = (byte) (value >>> 16);
+        data[at+2] = (byte) (value >>> 8);
+        data[at+3] = (byte) value;
+    }
+
+    /**
+     * Stream of compressed pixel data, written out in IDAT chunks of {@link #CHUNK_SIZE}
+     * bytes. Flushing writes out the last, partial chunk.
+     */
+    private final class DataStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length = 0;
+
+        @Override
+        public void write(final int b) throws IOException {
+            if(length == buffer.length)
+                flush();
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                if(length == buffer.length)
+                    flush();
+                final int count = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(length > 0) {
+                writeChunk("IDAT", buffer, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package debroejm.simpleblend.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded hand-off of pixel rows between two threads. A fixed set of row buffers is
+ * passed back and forth: the producer acquires a free row, fills it and sends it,
+ * and the consumer receives it, uses it and recycles it. A pipe therefore never
+ * holds more rows than its depth, however many rows pass through it.
+ *
+ * Either side can abort the pipe with an exception, which is thrown to the other
+ * side the next time it waits on the pipe.
+ */
+final class RowPipe {
+
+    /**
+     * Marker sent after the last row.
+     */
+    private static final int[] END = new int[0];
+
+    private final BlockingQueue<int[]> free, full;
+    private volatile Throwable failure = null;
+
+    RowPipe(final int width, final int depth) {
+        free = new ArrayBlockingQueue<>(depth + 1);
+        full = new ArrayBlockingQueue<>(depth + 1);
+        for(int i = 0; i < depth; i++)
+            free.add(new int[width]);
+    }
+
+    /**
+     * Waits for a free row for the producer to fill.
+     */
+    int[] acquire() throws IOException {
+        check();
+        final int[] row = take(free);
+        check();
+        return row;
+    }
+
+    /**
+     * Sends a filled row to the consumer.
+     */
+    void send(final int[] row) throws IOException {
+        try {
+            full.put(row);
+        } catch(InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    /**
+     * Tells the consumer that every row has been sent.
+     */
+    void close() throws IOException {
+        send(END);
+    }
+
+    /**
+     * Waits for the next filled row, or returns <code>null</code> once every row has been received.
+     */
+    int[] receive() throws IOException {
+        final int[] row = take(full);
+        if(row == END) {
+            check();
+            return null;
+        }
+        return row;
+    }
+
+    /**
+     * Hands a received row back to the producer.
+     */
+    void recycle(final int[] row) {
+        free.offer(row);
+    }
+
+    /**
+     * Aborts the pipe, waking whichever side is waiting on it. Only the first failure is kept.
+     */
+    void abort(final Throwable cause) {
+        if(failure == null)
+            failure = cause;
+        free.offer(END);
+        full.offer(END);
+    }
+
+    private static int[] take(final BlockingQueue<int[]> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch(InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    /**
+     * Throws the failure the pipe was aborted with, if any, regardless of the rows still queued.
+     */
+    void check() throws IOException {
+        final Throwable cause = failure;
+        if(cause == null)
+            return;
+        if(cause instanceof IOException)
+            throw new IOException(cause.getMessage(), cause);
+        if(cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if(cause instanceof Error)
+            throw (Error) cause;
+        throw new IOException(cause);
+    }
+
+    private static InterruptedIOException interrupted(final InterruptedException cause) {
+        Thread.currentThread().interrupt();
+        final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for a row");
+        exception.initCause(cause);
+        return exception;
+    }
+}
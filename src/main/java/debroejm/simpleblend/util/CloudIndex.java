@@ -0,0 +1,165 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid of PixelClouds, keyed by the cell containing their average color.
+ * Since a similar pixel is less than <code>epsilon</code> away from the average
+ * on every axis, and cells are at least <code>epsilon</code> wide, its cell is
+ * never more than one cell away from the cell of the average.
+ */
+final class CloudIndex {
+
+    /**
+     * Maximum amount of grid cells along each color axis.
+     */
+    private static final int MAX_CELLS = 64;
+
+    private final float epsilon;
+    private final boolean recordMembers;
+    private final int cells;
+    private final List<Entry>[] grid;
+    private final List<PixelCloud> clouds = new ArrayList<>();
+
+    CloudIndex(final float epsilon, final boolean recordMembers) {
+        this.epsilon = epsilon;
+        this.recordMembers = recordMembers;
+        // One cell fewer than fits, so cells stay wider than epsilon despite rounding
+        this.cells = epsilon > 0.0f ? (int) Math.max(1, Math.min(MAX_CELLS, 1.0f / epsilon - 1)) : MAX_CELLS;
+        this.grid = newGrid(cells * cells * cells);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Entry>[] newGrid(final int size) {
+        return (List<Entry>[]) new List<?>[size];
+    }
+
+    private int cell(final float value) {
+        final int cell = (int) (value * cells);
+        return cell < 0 ? 0 : (cell >= cells ? cells - 1 : cell);
+    }
+
+    /**
+     * Adds a single 32-bit ARGB pixel, skipping it if it is transparent, and records
+     * <code>index</code> as a member if member indices are recorded.
+     */
+    void add(final int pixel, final int index) {
+        final Color color = Color.ofRGB(pixel);
+        if(color.getAlpha() < 0.01f)
+            return;
+        final PixelCloud cloud = add(color, 1);
+        if(recordMembers)
+            cloud.addMember(index);
+    }
+
+    /**
+     * Adds a pixel that occurs <code>weight</code> times to the oldest PixelCloud it is
+     * similar to, or to a new PixelCloud if there is none.
+     */
+    PixelCloud add(final Color pixel, final int weight) {
+        final float r = pixel.getRed(), g = pixel.getGreen(), b = pixel.getBlue();
+        Entry best = find(r, g, b, -1);
+        if(best == null)
+            best = create(new PixelCloud(recordMembers));
+        best.cloud.add(pixel, weight);
+        update(best);
+        return best.cloud;
+    }
+
+    /**
+     * Merges a partial PixelCloud into the oldest PixelCloud its average color is
+     * similar to and that holds no other PixelCloud of the same partition, or keeps
+     * it as a new PixelCloud if there is none.
+     */
+    void merge(final PixelCloud partial, final int partition) {
+        Entry best = find(partial.getAverage(0), partial.getAverage(1), partial.getAverage(2), partition);
+        if(best == null) {
+            best = create(partial);
+        } else {
+            best.cloud.merge(partial);
+        }
+        best.partition = partition;
+        update(best);
+    }
+
+    /**
+     * Finds the oldest PixelCloud a color is similar to, skipping PixelClouds that
+     * were last merged with the <code>excluded</code> partition unless it is negative,
+     * or <code>null</code> if there is none.
+     */
+    private Entry find(final float r, final float g, final float b, final int excluded) {
+        final int cr = cell(r), cg = cell(g), cb = cell(b);
+        Entry best = null;
+        for(int x = Math.max(0, cr - 1); x <= Math.min(cells - 1, cr + 1); x++) {
+            for(int y = Math.max(0, cg - 1); y <= Math.min(cells - 1, cg + 1); y++) {
+                for(int z = Math.max(0, cb - 1); z <= Math.min(cells - 1, cb + 1); z++) {
+                    final List<Entry> entries = grid[(x * cells + y) * cells + z];
+                    if(entries == null)
+                        continue;
+                    for(final Entry entry : entries) {
+                        if((best == null || entry.order < best.order)
+                                && (excluded < 0 || entry.partition != excluded)
+                                && entry.cloud.isSimilar(r, g, b, epsilon))
+                            best = entry;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private Entry create(final PixelCloud cloud) {
+        final Entry entry = new Entry(cloud, clouds.size());
+        clouds.add(cloud);
+        return entry;
+    }
+
+    /**
+     * Moves an entry to the cell of its PixelCloud's current average.
+     */
+    private void update(final Entry entry) {
+        final int cell = (cell(entry.cloud.getAverage(0)) * cells
+                + cell(entry.cloud.getAverage(1))) * cells
+                + cell(entry.cloud.getAverage(2));
+        if(cell != entry.cell) {
+            if(entry.cell >= 0)
+                grid[entry.cell].remove(entry);
+            entry.cell = cell;
+            insert(entry);
+        }
+    }
+
+    private void insert(final Entry entry) {
+        List<Entry> entries = grid[entry.cell];
+        if(entries == null) {
+            entries = new ArrayList<>();
+            grid[entry.cell] = entries;
+        }
+        entries.add(entry);
+    }
+
+    List<PixelCloud> getClouds() {
+        return clouds;
+    }
+
+    void clear() {
+        clouds.clear();
+        Arrays.fill(grid, null);
+    }
+
+    private static final class Entry {
+        final PixelCloud cloud;
+        final int order;
+        int cell = -1;
+        int partition = -1;
+
+        Entry(final PixelCloud cloud, final int order) {
+            this.cloud = cloud;
+            this.order = order;
+        }
+    }
+}
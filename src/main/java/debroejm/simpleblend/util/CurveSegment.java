@@ -0,0 +1,73 @@
+package debroejm.simpleblend.util;
+
+/**
+ * Primitive <code>float</code> to <code>float</code> function representing a single
+ * segment of a color curve. Unlike <code>Function&lt;Float, Float&gt;</code>, evaluating
+ * a CurveSegment never boxes, so curves can be sampled without allocating.
+ */
+@FunctionalInterface
+public interface CurveSegment {
+
+    /**
+     * Retrieves the y-value of this segment from a given x-value.
+     *
+     * @param x x coordinate to evaluate at
+     * @return calculated y coordinate
+     */
+    float apply(float x);
+
+    /**
+     * Evaluates this segment for a run of x-values, writing the y-values into
+     * <code>out</code>. The arrays may be the same array.
+     *
+     * @param in Float array of x coordinates
+     * @param inOffset Index of the first x coordinate
+     * @param out Float array to write y coordinates to
+     * @param outOffset Index to write the first y coordinate to
+     * @param length Number of values to evaluate
+     */
+    default void apply(float[] in, int inOffset, float[] out, int outOffset, int length) {
+        for(int i = 0; i < length; i++)
+            out[outOffset+i] = apply(in[inOffset+i]);
+    }
+
+    /**
+     * Evaluates this segment for every x-value in <code>in</code>, writing the
+     * y-values into <code>out</code>. The arrays may be the same array.
+     *
+     * @param in Float array of x coordinates
+     * @param out Float array to write y coordinates to, at least as long as <code>in</code>
+     */
+    default void apply(float[] in, float[] out) {
+        apply(in, 0, out, 0, in.length);
+    }
+
+    /**
+     * Creates the segment through two points with an exponential modifier, using
+     * the cheapest implementation for the exponent: a plain line for 1.0f, repeated
+     * multiplication for small integers, and {@link ExponentialFunction} otherwise.
+     * All of them share the same coefficients, so they agree with
+     * ExponentialFunction to within float rounding.
+     *
+     * @param x1 x coordinate of first point
+     * @param y1 y coordinate of first point
+     * @param x2 x coordinate of second point
+     * @param y2 y coordinate of second point
+     * @param exponential exponential modifier; 1.0f is linear
+     * @return CurveSegment through both points
+     */
+    static CurveSegment of(
+            final float x1,
+            final float y1,
+            final float x2,
+            final float y2,
+            final float exponential
+    ) {
+        final ExponentialFunction function = new ExponentialFunction(x1, y1, x2, y2, exponential);
+        if(exponential == 1.0f)
+            return new LinearSegment(function.getSlope(), function.getIntercept());
+        if(exponential >= 2.0f && exponential <= PowerSegment.MAX_POWER && exponential == (int) exponential)
+            return new PowerSegment(function.getSlope(), function.getIntercept(), (int) exponential);
+        return function;
+    }
+}
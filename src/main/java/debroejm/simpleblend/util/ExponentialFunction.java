@@ -4,8 +4,11 @@ import java.util.function.Function;
 
 /**
  * Utility class representing an exponential function. Used for Color Curves.
+ *
+ * This is the general CurveSegment; {@link CurveSegment#of} picks a cheaper
+ * implementation when the exponential modifier allows it.
  */
-public class ExponentialFunction implements Function<Float, Float> {
+public class ExponentialFunction implements Function<Float, Float>, CurveSegment {
 
     private final float exponential;
     private final float slope;
@@ -34,6 +37,10 @@ public class ExponentialFunction implements Function<Float, Float> {
         this.intercept = y1 - this.slope * xe1;
     }
 
+    public float getExponential() { return exponential; }
+    public float getSlope() { return slope; }
+    public float getIntercept() { return intercept; }
+
     /**
      * Retrieves the y-value of this function from a given x-value.
      *
@@ -41,6 +48,23 @@ public class ExponentialFunction implements Function<Float, Float> {
      * @return calculated y coordinate
      */
     public Float apply(Float x) {
+        return apply(x.floatValue());
+    }
+
+    /**
+     * Retrieves the y-value of this function from a given x-value, without boxing.
+     *
+     * @param x x coordinate to evaluate at
+     * @return calculated y coordinate
+     */
+    @Override
+    public float apply(float x) {
         return (float) (slope * Math.pow(x, exponential) + intercept);
     }
+
+    @Override
+    public void apply(final float[] in, final int inOffset, final float[] out, final int outOffset, final int length) {
+        for(int i = 0; i < length; i++)
+            out[outOffset+i] = (float) (slope * Math.pow(in[inOffset+i], exponential) + intercept);
+    }
 }
@@ -0,0 +1,277 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.PixelSurface;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Utility class counting how often each 8-bit value occurs in each channel of
+ * 32-bit ARGB pixel data. Fully transparent pixels are skipped, the same as
+ * PixelScanner skips them.
+ *
+ * Large pixel arrays can be scanned in parallel; every task fills its own
+ * partial Histogram, and the partial Histograms are merged when the tasks
+ * are joined, so the counts never need to be synchronized.
+ */
+public final class Histogram {
+
+    public static final int BINS = 256;
+
+    /**
+     * Amount of pixels below which a scan is not split into further tasks.
+     */
+    private static final int SPLIT_THRESHOLD = 256 * 1024;
+
+    /**
+     * Seed of the sample positions picked by subsampled scans that are not given one.
+     */
+    public static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+    private final long[] counts = new long[BINS * 4];
+    private long total = 0;
+
+    /**
+     * Creates an empty Histogram.
+     */
+    public Histogram() {}
+
+    /**
+     * Counts a single 32-bit ARGB pixel.
+     *
+     * @param pixel 32-bit ARGB pixel
+     */
+    public void add(final int pixel) {
+        if((pixel >>> 24) == 0)
+            return;
+        counts[           pixel >>> 24        ]++;
+        counts[BINS     + (pixel >> 16 & 0xFF)]++;
+        counts[BINS * 2 + (pixel >>  8 & 0xFF)]++;
+        counts[BINS * 3 + (pixel       & 0xFF)]++;
+        total++;
+    }
+
+    /**
+     * Counts a run of 32-bit ARGB pixels.
+     *
+     * @param data Integer array of pixel data
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to count
+     */
+    public void add(final int[] data, final int offset, final int length) {
+        for(int i = offset; i < offset + length; i++)
+            add(data[i]);
+    }
+
+    /**
+     * Counts every pixel of a PixelSurface.
+     *
+     * @param surface PixelSurface of pixel data
+     */
+    public void add(final PixelSurface surface) {
+        surface.forEachRow((y, pixels, offset, length) -> add(pixels, offset, length));
+    }
+
+    /**
+     * Adds all counts of another Histogram to this one.
+     *
+     * @param other Histogram to merge into this one
+     */
+    public void merge(final Histogram other) {
+        for(int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        total += other.total;
+    }
+
+    /**
+     * Retrieves the amount of counted pixels.
+     *
+     * @return Amount of pixels
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Retrieves how many counted pixels have the given value in a channel.
+     *
+     * @param channel Channel to get the count for
+     * @param value Integer value, between 0 and 255 inclusive
+     * @return Amount of pixels
+     */
+    public long getCount(final Channel channel, final int value) {
+        return counts[channel.ordinal() * BINS + (value & 0xFF)];
+    }
+
+    /**
+     * Retrieves the smallest value of a channel that at least the given
+     * <code>fraction</code> of counted pixels are less than or equal to.
+     *
+     * @param channel Channel to get the percentile for
+     * @param fraction Float fraction, between 0.0f and 1.0f inclusive
+     * @return Integer value, between 0 and 255 inclusive; 0 if the Histogram is empty
+     */
+    public int percentile(final Channel channel, final float fraction) {
+        final double target = Math.max(0.0, Math.min(1.0, fraction)) * total;
+        final int base = channel.ordinal() * BINS;
+        long cumulative = 0;
+        for(int i = 0; i < BINS; i++) {
+            cumulative += counts[base + i];
+            if(cumulative > 0 && cumulative >= target)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Retrieves the bound on the error of percentiles of a subsampled Histogram, from
+     * the Dvoretzky-Kiefer-Wolfowitz inequality: with probability at least
+     * <code>1 - delta</code>, every percentile of every channel lies between the true
+     * percentiles at <code>fraction - eps</code> and <code>fraction + eps</code>, where
+     * <code>eps = sqrt(ln(2 / delta) / (2 * getTotal()))</code>.
+     *
+     * @param delta Probability that the bound does not hold, between 0.0 and 1.0 exclusive
+     * @return Maximum error of percentile fractions; 1.0 if the Histogram is empty
+     */
+    public double percentileError(final double delta) {
+        if(!(delta > 0.0 && delta < 1.0))
+            throw new IllegalArgumentException("Delta must be between 0.0 and 1.0 exclusive");
+        if(total == 0)
+            return 1.0;
+        return Math.min(1.0, Math.sqrt(Math.log(2.0 / delta) / (2.0 * total)));
+    }
+
+
+
+    // ****************
+    //  Static Methods
+    // ****************
+
+    /**
+     * Scans a run of pixel data into a new Histogram on the calling thread.
+     *
+     * @param data Integer array of pixel data
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to scan
+     * @return Histogram of the pixel data
+     */
+    public static Histogram scan(final int[] data, final int offset, final int length) {
+        final Histogram histogram = new Histogram();
+        histogram.add(data, offset, length);
+        return histogram;
+    }
+
+    /**
+     * Scans a run of pixel data into a new Histogram, in parallel on the given
+     * <code>pool</code>, sampling with {@link #DEFAULT_SEED}.
+     *
+     * @param pool ForkJoinPool to scan on
+     * @param data Integer array of pixel data
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to scan
+     * @param maxSamples Maximum amount of pixels to count, or 0 to count every pixel
+     * @return Histogram of the pixel data
+     * @see #scan(ForkJoinPool, int[], int, int, int, long)
+     */
+    public static Histogram scan(
+            final ForkJoinPool pool,
+            final int[] data, final int offset, final int length,
+            final int maxSamples
+    ) {
+        return scan(pool, data, offset, length, maxSamples, DEFAULT_SEED);
+    }
+
+    /**
+     * Scans a run of pixel data into a new Histogram, in parallel on the given
+     * <code>pool</code>.
+     *
+     * If <code>maxSamples</code> is positive and smaller than <code>length</code>,
+     * only about <code>maxSamples</code> pixels are counted: the run is divided into
+     * equal blocks and one pixel is picked from each block at a random position.
+     * Positions come from a PRNG seeded with <code>seed</code> and indexed by block,
+     * so the same data and seed always give the same Histogram, whatever the pool.
+     *
+     * Since every block is sampled independently, the percentiles of the result are
+     * within {@link #percentileError(double)} of the true percentiles with probability
+     * at least <code>1 - delta</code>, for any data, including data that repeats with
+     * the same period as the blocks.
+     *
+     * @param pool ForkJoinPool to scan on
+     * @param data Integer array of pixel data
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to scan
+     * @param maxSamples Maximum amount of pixels to count, or 0 to count every pixel
+     * @param seed Seed of the sampled positions
+     * @return Histogram of the pixel data
+     */
+    public static Histogram scan(
+            final ForkJoinPool pool,
+            final int[] data, final int offset, final int length,
+            final int maxSamples,
+            final long seed
+    ) {
+        final int step = maxSamples > 0 && length > maxSamples
+                ? (int) (((long) length + maxSamples - 1) / maxSamples)
+                : 1;
+        final int blocks = (int) (((long) length + step - 1) / step);
+        return pool.invoke(new ScanTask(data, offset, length, step, seed, 0, blocks));
+    }
+
+    /**
+     * Counts the pixels of a range of blocks, splitting the range in half while it is large.
+     */
+    private static final class ScanTask extends RecursiveTask<Histogram> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] data;
+        private final int offset, length, step;
+        private final long seed;
+        private final int from, to;
+
+        ScanTask(
+                final int[] data, final int offset, final int length, final int step,
+                final long seed, final int from, final int to
+        ) {
+            this.data = data;
+            this.offset = offset; this.length = length; this.step = step;
+            this.seed = seed;
+            this.from = from; this.to = to;
+        }
+
+        @Override
+        protected Histogram compute() {
+            if(to - from <= Math.max(1, SPLIT_THRESHOLD / step)) {
+                final Histogram histogram = new Histogram();
+                if(step == 1) {
+                    histogram.add(data, offset + from, to - from);
+                } else {
+                    for(int block = from; block < to; block++) {
+                        final int start = block * step;
+                        final int size = Math.min(step, length - start);
+                        histogram.add(data[offset + start + pick(seed, block, size)]);
+                    }
+                }
+                return histogram;
+            }
+            final int middle = (from + to) >>> 1;
+            final ScanTask upper = new ScanTask(data, offset, length, step, seed, middle, to);
+            upper.fork();
+            final Histogram histogram = new ScanTask(data, offset, length, step, seed, from, middle).compute();
+            histogram.merge(upper.join());
+            return histogram;
+        }
+
+        /**
+         * Picks a random position within a block, from the output of a SplitMix64
+         * generator for the block, so the position does not depend on how the scan is split.
+         */
+        private static int pick(final long seed, final int block, final int size) {
+            long z = seed + (block + 1L) * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            return (int) ((z >>> 1) % size);
+        }
+    }
+}
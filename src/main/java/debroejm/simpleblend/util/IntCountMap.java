@@ -0,0 +1,145 @@
+package debroejm.simpleblend.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often each integer key occurs, without boxing. Keys are kept in
+ * flat arrays in the order they were first added, and found through an
+ * open-addressing hash table of indices into those arrays.
+ */
+final class IntCountMap {
+
+    private int[] keys;
+    private int[] counts;
+    private int size = 0;
+
+    /**
+     * Hash table of <code>index + 1</code> into the key arrays; 0 marks an empty slot.
+     */
+    private int[] table;
+
+    IntCountMap() {
+        this(16);
+    }
+
+    IntCountMap(final int expectedSize) {
+        int capacity = 16;
+        while(capacity < expectedSize * 2 && capacity < (1 << 30))
+            capacity <<= 1;
+        table = new int[capacity];
+        keys = new int[capacity / 2];
+        counts = new int[capacity / 2];
+    }
+
+    private static int hash(final int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Adds one occurrence of a key.
+     */
+    void add(final int key) {
+        add(key, 1);
+    }
+
+    /**
+     * Adds <code>count</code> occurrences of a key.
+     */
+    void add(final int key, final int count) {
+        final int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while(true) {
+            final int entry = table[slot];
+            if(entry == 0)
+                break;
+            if(keys[entry - 1] == key) {
+                counts[entry - 1] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if(size == keys.length) {
+            grow();
+            add(key, count);
+            return;
+        }
+        keys[size] = key;
+        counts[size] = count;
+        table[slot] = ++size;
+    }
+
+    /**
+     * Adds one occurrence of every key in a run of data.
+     */
+    void add(final int[] data, final int offset, final int length) {
+        for(int i = offset; i < offset + length; i++)
+            add(data[i], 1);
+    }
+
+    /**
+     * Adds every count of another IntCountMap, in the other map's order of first occurrence.
+     */
+    void add(final IntCountMap other) {
+        for(int i = 0; i < other.size; i++)
+            add(other.keys[i], other.counts[i]);
+    }
+
+    /**
+     * Retrieves the count of a key, or 0 if it was never added.
+     */
+    int get(final int key) {
+        final int index = indexOf(key);
+        return index < 0 ? 0 : counts[index];
+    }
+
+    /**
+     * Retrieves the index of a key in order of first occurrence, or -1 if it was never added.
+     */
+    int indexOf(final int key) {
+        final int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        int entry;
+        while((entry = table[slot]) != 0) {
+            if(keys[entry - 1] == key)
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the amount of distinct keys.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the <code>index</code>th distinct key, in order of first occurrence.
+     */
+    int getKey(final int index) {
+        return keys[index];
+    }
+
+    /**
+     * Retrieves the count of the <code>index</code>th distinct key.
+     */
+    int getCount(final int index) {
+        return counts[index];
+    }
+
+    private void grow() {
+        final int capacity = table.length * 2;
+        keys = Arrays.copyOf(keys, capacity / 2);
+        counts = Arrays.copyOf(counts, capacity / 2);
+        table = new int[capacity];
+        final int mask = capacity - 1;
+        for(int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while(table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package debroejm.simpleblend.util;
+
+/**
+ * CurveSegment for an exponential modifier of exactly 1.0f, which is a straight line.
+ */
+final class LinearSegment implements CurveSegment {
+
+    private final double slope;
+    private final double intercept;
+
+    LinearSegment(final float slope, final float intercept) {
+        this.slope = slope;
+        this.intercept = intercept;
+    }
+
+    @Override
+    public float apply(final float x) {
+        return (float) (slope * x + intercept);
+    }
+
+    @Override
+    public void apply(final float[] in, final int inOffset, final float[] out, final int outOffset, final int length) {
+        for(int i = 0; i < length; i++)
+            out[outOffset+i] = (float) (slope * in[inOffset+i] + intercept);
+    }
+}
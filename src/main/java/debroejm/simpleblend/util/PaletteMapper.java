@@ -0,0 +1,282 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.BlendEngine;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Utility that maps pixels to the nearest color of a fixed palette, by squared
+ * distance in RGB space. Ties go to the palette color that comes first.
+ *
+ * The RGB cube is divided into a coarse grid of 32 by 32 by 32 cells. When the
+ * mapper is created, every palette color that could be nearest to some point of
+ * a cell is found for every cell; a cell with a single such color maps straight
+ * to it, and only the remaining ambiguous cells keep a short list of candidates
+ * to compare. Mapping a pixel therefore takes a few table reads, and only
+ * compares distances in cells near the border between two palette colors.
+ *
+ * The alpha of pixels is kept; only their RGB components are replaced.
+ */
+public class PaletteMapper {
+
+    private static final int GRID_BITS = 5;
+    private static final int CELLS = 1 << GRID_BITS;
+    private static final int CELL_SIZE = 256 / CELLS;
+
+    private final int[] palette;
+
+    /**
+     * Palette index for every cell, or <code>-(start + 1)</code> for ambiguous cells,
+     * where <code>candidates[start]</code> holds the amount of candidates, followed by
+     * their palette indices in ascending order.
+     */
+    private final int[] cells = new int[CELLS * CELLS * CELLS];
+    private final int[] candidates;
+
+    /**
+     * Creates a new PaletteMapper for a palette of 32-bit RGB colors. The alpha of
+     * the palette colors is ignored.
+     *
+     * @param palette Integer array of palette colors, with at least one color
+     */
+    public PaletteMapper(final int[] palette) {
+        if(palette.length == 0)
+            throw new IllegalArgumentException("Palette must have at least 1 color");
+        this.palette = new int[palette.length];
+        for(int i = 0; i < palette.length; i++)
+            this.palette[i] = palette[i] & 0x00FFFFFF;
+
+        int[] lists = new int[64];
+        int used = 0;
+        final int[] candidate = new int[palette.length];
+        for(int r = 0; r < CELLS; r++) {
+            for(int g = 0; g < CELLS; g++) {
+                for(int b = 0; b < CELLS; b++) {
+                    final int count = candidates(r * CELL_SIZE, g * CELL_SIZE, b * CELL_SIZE, candidate);
+                    final int cell = (r * CELLS + g) * CELLS + b;
+                    if(count == 1) {
+                        cells[cell] = candidate[0];
+                        continue;
+                    }
+                    if(used + count + 1 > lists.length)
+                        lists = Arrays.copyOf(lists, Math.max(lists.length * 2, used + count + 1));
+                    cells[cell] = -(used + 1);
+                    lists[used++] = count;
+                    System.arraycopy(candidate, 0, lists, used, count);
+                    used += count;
+                }
+            }
+        }
+        this.candidates = Arrays.copyOf(lists, used);
+    }
+
+    /**
+     * Creates a new PaletteMapper for the average colors of a Collection of PixelClouds,
+     * such as the palette of a {@link PaletteQuantizer} or the groups of a {@link PixelScanner}.
+     *
+     * @param clouds Collection of PixelClouds, with at least one PixelCloud
+     * @return PaletteMapper for the PixelClouds' average colors
+     */
+    public static PaletteMapper fromClouds(final Collection<PixelCloud> clouds) {
+        final int[] palette = new int[clouds.size()];
+        int i = 0;
+        for(final PixelCloud cloud : clouds)
+            palette[i++] = cloud.getAverageColor().getRGB();
+        return new PaletteMapper(palette);
+    }
+
+    /**
+     * Finds every palette color whose smallest distance to a cell is not larger than the
+     * largest distance of the best palette color, which are the only colors that can be
+     * nearest to a point of the cell.
+     */
+    private int candidates(final int r, final int g, final int b, final int[] candidate) {
+        long bound = Long.MAX_VALUE;
+        for(final int color : palette)
+            bound = Math.min(bound, farthest(color >> 16 & 0xFF, r) + farthest(color >> 8 & 0xFF, g) + farthest(color & 0xFF, b));
+        int count = 0;
+        for(int i = 0; i < palette.length; i++) {
+            final int color = palette[i];
+            if(nearest(color >> 16 & 0xFF, r) + nearest(color >> 8 & 0xFF, g) + nearest(color & 0xFF, b) <= bound)
+                candidate[count++] = i;
+        }
+        return count;
+    }
+
+    private static long nearest(final int value, final int low) {
+        final int distance = value < low ? low - value : (value > low + CELL_SIZE - 1 ? value - low - CELL_SIZE + 1 : 0);
+        return (long) distance * distance;
+    }
+
+    private static long farthest(final int value, final int low) {
+        final int distance = Math.max(Math.abs(value - low), Math.abs(value - low - CELL_SIZE + 1));
+        return (long) distance * distance;
+    }
+
+    /**
+     * Retrieves a copy of the palette, as 32-bit RGB colors with an alpha of 0.
+     *
+     * @return Integer array of palette colors
+     */
+    public int[] getPalette() {
+        return palette.clone();
+    }
+
+    /**
+     * Finds the index of the palette color nearest to a pixel.
+     *
+     * @param pixel 32-bit ARGB pixel
+     * @return Integer index into the palette
+     */
+    public int indexOf(final int pixel) {
+        return indexOf(pixel >> 16 & 0xFF, pixel >> 8 & 0xFF, pixel & 0xFF);
+    }
+
+    private int indexOf(final int r, final int g, final int b) {
+        final int cell = cells[((r >> (8 - GRID_BITS)) * CELLS + (g >> (8 - GRID_BITS))) * CELLS + (b >> (8 - GRID_BITS))];
+        if(cell >= 0)
+            return cell;
+        final int start = -cell - 1;
+        final int count = candidates[start];
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for(int i = start + 1; i <= start + count; i++) {
+            final int color = palette[candidates[i]];
+            final int dr = (color >> 16 & 0xFF) - r, dg = (color >> 8 & 0xFF) - g, db = (color & 0xFF) - b;
+            final int distance = dr*dr + dg*dg + db*db;
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                best = candidates[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Maps a pixel to the nearest palette color, keeping its alpha.
+     *
+     * @param pixel 32-bit ARGB pixel
+     * @return 32-bit ARGB pixel with the RGB components of the nearest palette color
+     */
+    public int map(final int pixel) {
+        return pixel & 0xFF000000 | palette[indexOf(pixel)];
+    }
+
+    /**
+     * Maps a run of 32-bit ARGB pixels to their nearest palette colors, writing the
+     * results into <code>dst</code>.
+     *
+     * @param src Integer array of source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     */
+    public void remap(final int[] src, final int[] dst) {
+        remap(src, 0, src.length, dst, 0, src.length, src.length, 1);
+    }
+
+    /**
+     * Maps a rectangular region of 32-bit ARGB pixels to their nearest palette colors,
+     * writing the results into <code>dst</code>.
+     *
+     * @param src Integer array of source pixel data
+     * @param srcOffset Index of the first source pixel
+     * @param srcStride Row stride of the source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void remap(
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height
+    ) {
+        for(int y = 0; y < height; y++) {
+            final int s = srcOffset + y*srcStride, d = dstOffset + y*dstStride;
+            for(int x = 0; x < width; x++)
+                dst[d+x] = map(src[s+x]);
+        }
+    }
+
+    /**
+     * Maps a rectangular region of 32-bit ARGB pixels to their nearest palette colors,
+     * writing the results into <code>dst</code>. The region is split into tiles that
+     * are processed in parallel by the given <code>engine</code>.
+     *
+     * @param engine BlendEngine to process tiles with
+     * @param src Integer array of source pixel data
+     * @param srcOffset Index of the first source pixel
+     * @param srcStride Row stride of the source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void remap(
+            final BlendEngine engine,
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height
+    ) {
+        engine.forEachTile(width, height, (x, y, w, h) -> remap(
+                src, srcOffset + y*srcStride + x, srcStride,
+                dst, dstOffset + y*dstStride + x, dstStride,
+                w, h
+        ));
+    }
+
+    /**
+     * Maps a rectangular region of 32-bit ARGB pixels to palette colors with
+     * Floyd-Steinberg dithering, writing the results into <code>dst</code>. The error
+     * of every pixel is spread over its unvisited neighbours, so areas of the image
+     * keep their average color. Only the errors of the current and next row are kept.
+     *
+     * Error diffusion depends on every previous pixel, so dithering is sequential.
+     *
+     * @param src Integer array of source pixel data
+     * @param srcOffset Index of the first source pixel
+     * @param srcStride Row stride of the source pixel data
+     * @param dst Integer array to write results to; may be <code>src</code>
+     * @param dstOffset Index of the first destination pixel
+     * @param dstStride Row stride of the destination pixel data
+     * @param width Width of the region in pixels
+     * @param height Height of the region in pixels
+     */
+    public void dither(
+            final int[] src, final int srcOffset, final int srcStride,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int width, final int height
+    ) {
+        // Errors of each row, three channels per pixel with a pixel of padding at either end
+        float[] current = new float[(width + 2) * 3];
+        float[] next = new float[(width + 2) * 3];
+        final int[] components = new int[3];
+        for(int y = 0; y < height; y++) {
+            final int s = srcOffset + y*srcStride, d = dstOffset + y*dstStride;
+            for(int x = 0; x < width; x++) {
+                final int pixel = src[s+x];
+                final int e = (x + 1) * 3;
+                for(int c = 0; c < 3; c++) {
+                    final float value = (pixel >> (16 - c * 8) & 0xFF) + current[e + c];
+                    components[c] = value <= 0.0f ? 0 : (value >= 255.0f ? 255 : Math.round(value));
+                }
+                final int index = indexOf(components[0], components[1], components[2]);
+                final int color = palette[index];
+                dst[d+x] = pixel & 0xFF000000 | color;
+                for(int c = 0; c < 3; c++) {
+                    final float error = (pixel >> (16 - c * 8) & 0xFF) + current[e + c] - (color >> (16 - c * 8) & 0xFF);
+                    current[e + 3 + c] += error * (7.0f / 16.0f);
+                    next[e - 3 + c] += error * (3.0f / 16.0f);
+                    next[e + c] += error * (5.0f / 16.0f);
+                    next[e + 3 + c] += error * (1.0f / 16.0f);
+                }
+            }
+            final float[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0.0f);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Utility that reduces pixel data to a palette of a fixed amount of colors, using
+ * median cut over a histogram of the distinct colors.
+ *
+ * Every distinct opaque RGB value is counted first. Starting from a single box
+ * around all of them, the box with the widest range on any channel is repeatedly
+ * split at the weighted median of that channel, until there are as many boxes as
+ * requested colors or no box holds more than one distinct color. Each split is a
+ * counting partition over the 256 values of the channel, so quantizing takes
+ * O(pixels + distinct colors * log colors) time.
+ *
+ * The alpha of pixels is ignored, apart from transparent pixels being skipped,
+ * the same as PixelScanner skips them.
+ */
+public class PaletteQuantizer {
+
+    /**
+     * Amount of pixels below which a parallel histogram pass is not split into further tasks.
+     */
+    private static final int SPLIT_THRESHOLD = 256 * 1024;
+
+    private final int colors;
+
+    /**
+     * Creates a new PaletteQuantizer for a given palette size.
+     *
+     * @param colors Amount of colors in the palette, at least 1
+     */
+    public PaletteQuantizer(final int colors) {
+        if(colors < 1)
+            throw new IllegalArgumentException("Palette must have at least 1 color");
+        this.colors = colors;
+    }
+
+    /**
+     * Quantizes a given selection of pixel data and returns a PixelCloud for every
+     * palette color, holding every pixel mapped to it. The palette has exactly as
+     * many colors as requested, unless the data has fewer distinct opaque colors,
+     * in which case there is one PixelCloud per distinct color.
+     *
+     * Pixel data is assumed to be in 32-bit ARGB form.
+     *
+     * @param data Integer array of pixel data
+     * @return List of PixelClouds, ordered from most to least pixels
+     */
+    public List<PixelCloud> quantize(int[] data) {
+        return quantize(count(data, 0, data.length));
+    }
+
+    /**
+     * Quantizes a given selection of pixel data like {@link #quantize(int[])}, with the
+     * histogram pass running in parallel on the given <code>pool</code>. The result is
+     * the same as that of {@link #quantize(int[])}.
+     *
+     * @param pool ForkJoinPool to count pixels on
+     * @param data Integer array of pixel data
+     * @return List of PixelClouds, ordered from most to least pixels
+     */
+    public List<PixelCloud> quantize(ForkJoinPool pool, int[] data) {
+        return quantize(pool.invoke(new CountTask(data, 0, data.length)));
+    }
+
+    private static boolean isTransparent(final int pixel) {
+        return (pixel >>> 24) / 255.0f < 0.01f;
+    }
+
+    private static IntCountMap count(final int[] data, final int offset, final int length) {
+        final IntCountMap counts = new IntCountMap();
+        for(int i = offset; i < offset + length; i++) {
+            if(!isTransparent(data[i]))
+                counts.add(data[i] & 0x00FFFFFF);
+        }
+        return counts;
+    }
+
+    private List<PixelCloud> quantize(final IntCountMap counts) {
+        final int size = counts.size();
+        final int[] keys = new int[size];
+        final int[] weights = new int[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = counts.getKey(i);
+            weights[i] = counts.getCount(i);
+        }
+
+        final List<Box> boxes = new ArrayList<>();
+        final PriorityQueue<Box> splittable = new PriorityQueue<>();
+        if(size > 0) {
+            final Box all = new Box(keys, weights, 0, size, 0);
+            boxes.add(all);
+            if(all.isSplittable())
+                splittable.add(all);
+        }
+
+        final int[] bins = new int[256];
+        while(boxes.size() < colors && !splittable.isEmpty()) {
+            final Box box = splittable.poll();
+            final int middle = box.split(keys, weights, bins);
+            final Box lower = new Box(keys, weights, box.from, middle, box.order);
+            final Box upper = new Box(keys, weights, middle, box.to, boxes.size());
+            boxes.set(box.order, lower);
+            boxes.add(upper);
+            if(lower.isSplittable())
+                splittable.add(lower);
+            if(upper.isSplittable())
+                splittable.add(upper);
+        }
+
+        final List<PixelCloud> palette = new ArrayList<>(boxes.size());
+        for(final Box box : boxes) {
+            final PixelCloud cloud = new PixelCloud();
+            for(int i = box.from; i < box.to; i++)
+                cloud.add(Color.ofRGB(0xFF000000 | keys[i]), weights[i]);
+            palette.add(cloud);
+        }
+        palette.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return palette;
+    }
+
+    /**
+     * A range of the distinct colors, with the bounds of each channel. Boxes with wider
+     * ranges split first; boxes with equal ranges split in the order they were made.
+     */
+    private static final class Box implements Comparable<Box> {
+        final int from, to, order;
+        final int[] min = { 255, 255, 255 };
+        final int[] max = { 0, 0, 0 };
+        int channel = 0;
+
+        Box(final int[] keys, final int[] weights, final int from, final int to, final int order) {
+            this.from = from; this.to = to; this.order = order;
+            for(int i = from; i < to; i++) {
+                for(int c = 0; c < 3; c++) {
+                    final int value = component(keys[i], c);
+                    if(value < min[c]) min[c] = value;
+                    if(value > max[c]) max[c] = value;
+                }
+            }
+            for(int c = 1; c < 3; c++) {
+                if(range(c) > range(channel))
+                    channel = c;
+            }
+        }
+
+        private static int component(final int key, final int channel) {
+            return key >> (16 - channel * 8) & 0xFF;
+        }
+
+        int range(final int channel) {
+            return max[channel] - min[channel];
+        }
+
+        boolean isSplittable() {
+            return range(channel) > 0;
+        }
+
+        /**
+         * Partitions this box's colors around the weighted median of its widest channel,
+         * and returns the index of the first color of the upper half.
+         */
+        int split(final int[] keys, final int[] weights, final int[] bins) {
+            final int low = min[channel], high = max[channel];
+            long total = 0;
+            for(int v = low; v <= high; v++)
+                bins[v] = 0;
+            for(int i = from; i < to; i++) {
+                bins[component(keys[i], channel)] += weights[i];
+                total += weights[i];
+            }
+
+            // Lower half holds every value up to the median, but never all of them
+            int median = low;
+            long cumulative = bins[low];
+            while(median < high - 1 && cumulative * 2 < total)
+                cumulative += bins[++median];
+
+            int middle = from;
+            for(int i = from; i < to; i++) {
+                if(component(keys[i], channel) <= median) {
+                    final int key = keys[i], weight = weights[i];
+                    keys[i] = keys[middle]; weights[i] = weights[middle];
+                    keys[middle] = key; weights[middle] = weight;
+                    middle++;
+                }
+            }
+            return middle;
+        }
+
+        @Override
+        public int compareTo(final Box other) {
+            final int byRange = Integer.compare(other.range(other.channel), range(channel));
+            return byRange != 0 ? byRange : Integer.compare(order, other.order);
+        }
+    }
+
+    /**
+     * Counts the distinct colors of a run of pixels, splitting the run in half while it is large.
+     */
+    private static final class CountTask extends RecursiveTask<IntCountMap> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] data;
+        private final int offset, length;
+
+        CountTask(final int[] data, final int offset, final int length) {
+            this.data = data;
+            this.offset = offset; this.length = length;
+        }
+
+        @Override
+        protected IntCountMap compute() {
+            if(length <= SPLIT_THRESHOLD)
+                return count(data, offset, length);
+            final int half = length >>> 1;
+            final CountTask upper = new CountTask(data, offset + half, length - half);
+            upper.fork();
+            final IntCountMap counts = new CountTask(data, offset, half).compute();
+            counts.add(upper.join());
+            return counts;
+        }
+    }
+}
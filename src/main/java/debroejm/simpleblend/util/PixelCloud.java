@@ -2,12 +2,16 @@ package debroejm.simpleblend.util;
 
 import debroejm.simpleblend.Color;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Utility class representing a cloud of 'similar' points. A PixelCloud is created with
  * a specified dimensionality, and all points it stores must live in that dimension.
+ *
+ * Only statistics of the points are kept: their count, and the sum, minimum and maximum
+ * of each color element. Adding a point therefore takes no memory. If the points
+ * themselves are needed, a PixelCloud can be created that also records the index of
+ * every member pixel; see {@link #PixelCloud(boolean)}.
  */
 public class PixelCloud implements Comparable<PixelCloud> {
 
@@ -15,17 +19,48 @@ public class PixelCloud implements Comparable<PixelCloud> {
     public static final int POS_DIMS = 2;
     public static final int TOTAL_DIMS = COLOR_DIMS + POS_DIMS;
 
-    private final List<Color> points = new LinkedList<>();
+    /**
+     * Maximum amount of member indices a PixelCloud can record, bounded by the largest
+     * array the JVM can reliably allocate.
+     */
+    public static final int MAX_MEMBERS = Integer.MAX_VALUE - 8;
+
+    private long count;
 
-    private float[] cachedSum_color;
+    private double[] cachedSum_color;
     private float[] average_color;
     private float[] min_color;
     private float[] max_color;
 
     /**
-     * Creates an empty PixelCloud.
+     * Position statistics, kept only for points added with a position.
+     */
+    private long count_pos;
+    private double[] cachedSum_pos;
+    private int[] min_pos;
+    private int[] max_pos;
+
+    /**
+     * Indices of member pixels, or <code>null</code> if they are not recorded.
+     */
+    private int[] members;
+    private int memberCount;
+
+    /**
+     * Creates an empty PixelCloud that only keeps statistics.
      */
     public PixelCloud() {
+        this(false);
+    }
+
+    /**
+     * Creates an empty PixelCloud, optionally recording the indices of its member
+     * pixels with {@link #addMember(int)}.
+     *
+     * @param recordMembers True to record member indices, false to only keep statistics
+     */
+    public PixelCloud(final boolean recordMembers) {
+        members = recordMembers ? new int[16] : null;
         clear();
     }
 
@@ -33,13 +68,22 @@ public class PixelCloud implements Comparable<PixelCloud> {
      * Clears all points from this PixelCloud, resetting it to empty.
      */
     public void clear() {
-        points.clear();
-        cachedSum_color = new float[COLOR_DIMS];
+        count = 0;
+        memberCount = 0;
+        cachedSum_color = new double[COLOR_DIMS];
         average_color = new float[COLOR_DIMS];
         min_color = new float[COLOR_DIMS];
         max_color = new float[COLOR_DIMS];
+        count_pos = 0;
+        cachedSum_pos = new double[POS_DIMS];
+        min_pos = new int[POS_DIMS];
+        max_pos = new int[POS_DIMS];
+        for(int i = 0; i < POS_DIMS; i++) {
+            min_pos[i] = Integer.MAX_VALUE;
+            max_pos[i] = Integer.MIN_VALUE;
+        }
         for(int i = 0; i < COLOR_DIMS; i++) {
-            cachedSum_color[i] = 0.0f;
+            cachedSum_color[i] = 0.0;
             average_color[i]   = 0.0f;
             min_color[i]       = Float.MAX_VALUE;
             max_color[i]       = Float.MIN_VALUE;
@@ -52,16 +96,27 @@ public class PixelCloud implements Comparable<PixelCloud> {
      * @return True if the PixelCloud is empty, false otherwise
      */
     public boolean isEmpty() {
-        return points.isEmpty();
+        return count == 0;
     }
 
     /**
-     * Retrieves the amount of points stored in this PixelCloud.
+     * Retrieves the amount of points stored in this PixelCloud, saturated to
+     * <code>Integer.MAX_VALUE</code>; see {@link #getCount()} for the exact amount.
      *
      * @return Integral number of points stored
      */
     public int size() {
-        return points.size();
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the amount of points stored in this PixelCloud, which may be more than
+     * <code>Integer.MAX_VALUE</code> once points have been added with large weights.
+     *
+     * @return Long number of points stored
+     */
+    public long getCount() {
+        return count;
     }
 
     /**
@@ -71,13 +126,26 @@ public class PixelCloud implements Comparable<PixelCloud> {
      * @param color Color value to add
      */
     public void add(final Color color) {
+        add(color, 1);
+    }
 
-        points.add(color);
+    /**
+     * Adds a pixel that occurs <code>weight</code> times to this PixelCloud, as if it was
+     * added <code>weight</code> times. Does not check if the color is similar before adding.
+     *
+     * @param color Color value to add
+     * @param weight Amount of times the color occurs, at least 1
+     */
+    public void add(final Color color, final int weight) {
+        if(weight < 1)
+            throw new IllegalArgumentException("Weight must be at least 1");
+
+        count += weight;
 
         final float[] colorValues = color.getRGBComponents();
         for(int i = 0; i < COLOR_DIMS; i++) {
-            cachedSum_color[i] += colorValues[i+1];
-            average_color[i] = cachedSum_color[i] / points.size();
+            cachedSum_color[i] += (double) colorValues[i+1] * weight;
+            average_color[i] = (float) (cachedSum_color[i] / count);
             if(colorValues[i+1] < min_color[i])
                 min_color[i] = colorValues[i+1];
             if(colorValues[i+1] > max_color[i])
@@ -85,6 +153,110 @@ public class PixelCloud implements Comparable<PixelCloud> {
         }
     }
 
+    /**
+     * Adds a pixel at a position to this PixelCloud. Besides the color statistics, the
+     * bounding box and centroid of every pixel added with a position are kept.
+     * Does not check if the color is similar before adding.
+     *
+     * @param color Color value to add
+     * @param x Integer x position of the pixel
+     * @param y Integer y position of the pixel
+     */
+    public void add(final Color color, final int x, final int y) {
+        add(color, 1);
+        count_pos++;
+        cachedSum_pos[0] += x;
+        cachedSum_pos[1] += y;
+        if(x < min_pos[0]) min_pos[0] = x;
+        if(y < min_pos[1]) min_pos[1] = y;
+        if(x > max_pos[0]) max_pos[0] = x;
+        if(y > max_pos[1]) max_pos[1] = y;
+    }
+
+    /**
+     * Adds every point of another PixelCloud to this one, by combining their statistics.
+     * Does not check if the PixelClouds are similar before merging. If both PixelClouds
+     * record member indices, the other PixelCloud's indices are appended to this one's.
+     *
+     * @param other PixelCloud to merge into this one
+     */
+    public void merge(final PixelCloud other) {
+        if(other.count == 0)
+            return;
+        count += other.count;
+        for(int i = 0; i < COLOR_DIMS; i++) {
+            cachedSum_color[i] += other.cachedSum_color[i];
+            average_color[i] = (float) (cachedSum_color[i] / count);
+            if(other.min_color[i] < min_color[i])
+                min_color[i] = other.min_color[i];
+            if(other.max_color[i] > max_color[i])
+                max_color[i] = other.max_color[i];
+        }
+        count_pos += other.count_pos;
+        for(int i = 0; i < POS_DIMS; i++) {
+            cachedSum_pos[i] += other.cachedSum_pos[i];
+            if(other.min_pos[i] < min_pos[i])
+                min_pos[i] = other.min_pos[i];
+            if(other.max_pos[i] > max_pos[i])
+                max_pos[i] = other.max_pos[i];
+        }
+        if(members != null && other.members != null) {
+            if(memberCount + (long) other.memberCount > MAX_MEMBERS)
+                throw new IllegalStateException("PixelCloud cannot record more than " + MAX_MEMBERS + " members");
+            if(memberCount + other.memberCount > members.length)
+                members = Arrays.copyOf(members, grow(members.length, memberCount + other.memberCount));
+            System.arraycopy(other.members, 0, members, memberCount, other.memberCount);
+            memberCount += other.memberCount;
+        }
+    }
+
+    /**
+     * Determines whether or not this PixelCloud records the indices of its member pixels.
+     *
+     * @return True if member indices are recorded, false otherwise
+     */
+    public boolean isRecordingMembers() {
+        return members != null;
+    }
+
+    /**
+     * Records the index of a member pixel, such as its index in scanned pixel data.
+     * Only affects the recorded indices; the pixel's color is added with {@link #add(Color)}.
+     *
+     * @param index Integer index of the member pixel
+     * @throws IllegalStateException if this PixelCloud does not record member indices,
+     *         or already records {@link #MAX_MEMBERS} of them
+     */
+    public void addMember(final int index) {
+        if(members == null)
+            throw new IllegalStateException("PixelCloud does not record members");
+        if(memberCount == MAX_MEMBERS)
+            throw new IllegalStateException("PixelCloud cannot record more than " + MAX_MEMBERS + " members");
+        if(memberCount == members.length)
+            members = Arrays.copyOf(members, grow(members.length, memberCount + 1));
+        members[memberCount++] = index;
+    }
+
+    /**
+     * Doubles an array length until it holds <code>needed</code> elements, without
+     * overflowing past {@link #MAX_MEMBERS}.
+     */
+    private static int grow(final int length, final int needed) {
+        return (int) Math.min(Math.max((long) length * 2, needed), MAX_MEMBERS);
+    }
+
+    /**
+     * Retrieves the recorded indices of member pixels, in the order they were recorded.
+     *
+     * @return Integer array of member indices
+     * @throws IllegalStateException if this PixelCloud does not record member indices
+     */
+    public int[] getMembers() {
+        if(members == null)
+            throw new IllegalStateException("PixelCloud does not record members");
+        return Arrays.copyOf(members, memberCount);
+    }
+
     /**
      * Checks if a color is 'similar' enough to be added to this PixelCloud. Similarity is defined
      * as being within a certain epsilon of this PixelCloud's average and being within half of that
@@ -157,12 +329,68 @@ public class PixelCloud implements Comparable<PixelCloud> {
         return Color.ofRGB(average_color[0], average_color[1], average_color[2]);
     }
 
+    /**
+     * Determines whether or not any points were added to this PixelCloud with a position.
+     *
+     * @return True if positions are known, false otherwise
+     */
+    public boolean hasPositions() {
+        return count_pos > 0;
+    }
+
+    /**
+     * Retrieves the minimum position of the points added with a position, which is the
+     * top left corner of their inclusive bounding box.
+     *
+     * @return Integer array of the minimum x and y positions
+     * @throws IllegalStateException if no points were added with a position
+     */
+    public int[] getMinimumPosition() {
+        checkPositions();
+        return min_pos.clone();
+    }
+
+    /**
+     * Retrieves the maximum position of the points added with a position, which is the
+     * bottom right corner of their inclusive bounding box.
+     *
+     * @return Integer array of the maximum x and y positions
+     * @throws IllegalStateException if no points were added with a position
+     */
+    public int[] getMaximumPosition() {
+        checkPositions();
+        return max_pos.clone();
+    }
+
+    /**
+     * Retrieves the centroid of the points added with a position.
+     *
+     * @return Float array of the average x and y positions
+     * @throws IllegalStateException if no points were added with a position
+     */
+    public float[] getCentroid() {
+        checkPositions();
+        return new float[]{ (float) (cachedSum_pos[0] / count_pos), (float) (cachedSum_pos[1] / count_pos) };
+    }
+
+    private void checkPositions() {
+        if(count_pos == 0)
+            throw new IllegalStateException("PixelCloud has no positions");
+    }
+
+    /**
+     * Retrieves a single element of the current average, without creating a Color.
+     */
+    float getAverage(final int index) {
+        return average_color[index];
+    }
+
     public int getSize() {
-        return points.size();
+        return size();
     }
 
     @Override
     public int compareTo(PixelCloud other) {
-        return points.size() - other.points.size();
+        return Long.compare(count, other.count);
     }
 }
@@ -1,17 +1,32 @@
 package debroejm.simpleblend.util;
 
 import debroejm.simpleblend.Color;
+import debroejm.simpleblend.PixelSurface;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Utility that is used to scan pixel data for unique groups of color.
+ *
+ * A pixel is added to the oldest PixelCloud it is similar to, or starts a new
+ * PixelCloud if it is not similar to any of them. To avoid testing every pixel
+ * against every PixelCloud, the PixelClouds are indexed by their average color in
+ * a uniform grid of cells at least <code>epsilon</code> wide, so only PixelClouds
+ * in the pixel's own cell and the cells next to it need to be tested.
  */
 public class PixelScanner {
 
+    /**
+     * Amount of pixels in each partition of a parallel scan.
+     */
+    public static final int PARTITION_SIZE = 64 * 1024;
+
     private final float epsilon;
+    private final boolean recordMembers;
 
     /**
      * Creates a new PixelScanner with a given epsilon value. The epsilon value
@@ -21,12 +36,24 @@ public class PixelScanner {
      * @param epsilon Float epsilon value
      */
     public PixelScanner(final float epsilon) {
+        this(epsilon, false);
+    }
+
+    /**
+     * Creates a new PixelScanner with a given epsilon value, optionally recording
+     * the index of every pixel in the PixelCloud it is added to.
+     *
+     * @param epsilon Float epsilon value
+     * @param recordMembers True to record member indices; see {@link PixelCloud#getMembers()}
+     */
+    public PixelScanner(final float epsilon, final boolean recordMembers) {
         this.epsilon = epsilon;
+        this.recordMembers = recordMembers;
     }
 
     /**
      * Scans a given selection of pixel data and returns a Collection of PixelClouds
-     * representing unique groups of color.
+     * representing unique groups of color, in the order they were created.
      *
      * Pixel data is assumed to be in 32-bit ARGB form.
      *
@@ -34,32 +61,182 @@ public class PixelScanner {
      * @return Collection of PixelClouds
      */
     public Collection<PixelCloud> scan(int[] data) {
+        return scan(data, 0, data.length);
+    }
+
+    /**
+     * Scans every pixel of a PixelSurface like {@link #scan(int[])}, in rows from top
+     * to bottom. Recorded member indices are <code>y * width + x</code>.
+     *
+     * @param surface PixelSurface of pixel data
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> scan(PixelSurface surface) {
+        final ScanSession session = newSession();
+        session.add(surface);
+        return session.getClouds();
+    }
+
+    private List<PixelCloud> scan(final int[] data, final int offset, final int length) {
+
+        final CloudIndex index = new CloudIndex(epsilon, recordMembers);
+
+        for(int i = offset; i < offset + length; i++)
+            index.add(data[i], i);
+
+        return index.getClouds();
+    }
+
+    /**
+     * Scans an image for connected regions of similar color, and returns a Collection
+     * of PixelClouds with one PixelCloud per region, in the order the regions were
+     * found. Every PixelCloud carries the bounding box and centroid of its region; see
+     * {@link PixelCloud#getMinimumPosition()} and {@link PixelCloud#getCentroid()}.
+     *
+     * Pixels are connected to their four direct neighbours. Scanning row by row, a pixel
+     * joins the region of its left or upper neighbour if it is similar to that region,
+     * preferring the left one, and unites both regions if it is similar to both; it
+     * starts a new region otherwise. The scan is a single pass in linear time, and only
+     * keeps two rows of region labels besides the regions themselves.
+     *
+     * @param data Integer array of 32-bit ARGB pixel data, in rows of <code>width</code> pixels
+     * @param width Width of the image in pixels
+     * @param height Height of the image in pixels
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> scanRegions(int[] data, int width, int height) {
+        if(width < 0 || height < 0 || (long) width * height > data.length)
+            throw new IllegalArgumentException("Image size does not match pixel data");
+        return scanRegions(PixelSurface.wrap(data, width, height));
+    }
+
+    /**
+     * Scans a PixelSurface for connected regions of similar color, like
+     * {@link #scanRegions(int[], int, int)}. Recorded member indices are
+     * <code>y * width + x</code>.
+     *
+     * @param surface PixelSurface of pixel data
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> scanRegions(PixelSurface surface) {
+        return new RegionLabeler(epsilon, recordMembers).label(surface);
+    }
+
+    /**
+     * Starts a new ScanSession with this scanner's settings, which groups pixel data
+     * that is handed to it in chunks.
+     *
+     * @return Empty ScanSession
+     */
+    public ScanSession newSession() {
+        return new ScanSession(epsilon, recordMembers);
+    }
+
+    /**
+     * Scans a given selection of pixel data in parallel on the given <code>pool</code>,
+     * and returns a Collection of PixelClouds representing unique groups of color.
+     *
+     * The data is split into fixed partitions of {@link #PARTITION_SIZE} pixels, which
+     * are scanned independently like {@link #scan(int[])}. The partial PixelClouds are
+     * then merged in order, first by partition and then by creation: each one is merged
+     * into the oldest merged PixelCloud that its average color is similar to, or kept as
+     * a new PixelCloud if there is none. PixelClouds of the same partition were already
+     * kept apart by the partition's own scan, so they are never merged with each other.
+     * Partitions do not depend on the pool, so the result is the same for any amount
+     * of threads, and data no larger than a single partition is grouped exactly as
+     * {@link #scan(int[])} groups it.
+     *
+     * Recorded member indices are in ascending order within each partition.
+     *
+     * @param pool ForkJoinPool to scan on
+     * @param data Integer array of pixel data
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> scan(ForkJoinPool pool, int[] data) {
+        final int partitions = (int) (((long) data.length + PARTITION_SIZE - 1) / PARTITION_SIZE);
+        @SuppressWarnings("unchecked")
+        final List<PixelCloud>[] partials = (List<PixelCloud>[]) new List<?>[partitions];
+        pool.invoke(new ScanTask(data, partials, 0, partitions));
 
-        Set<PixelCloud> groups = new HashSet<>();
+        final CloudIndex index = new CloudIndex(epsilon, recordMembers);
+        for(int partition = 0; partition < partitions; partition++) {
+            for(final PixelCloud cloud : partials[partition])
+                index.merge(cloud, partition);
+        }
+        return index.getClouds();
+    }
 
-        for(int i = 0; i < data.length; i++) {
+    /**
+     * Scans a range of partitions, splitting the range in half while it holds more than one.
+     */
+    private final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-            final Color pixel = Color.ofRGB(data[i]);
+        private final int[] data;
+        private final List<PixelCloud>[] partials;
+        private final int from, to;
+
+        ScanTask(final int[] data, final List<PixelCloud>[] partials, final int from, final int to) {
+            this.data = data;
+            this.partials = partials;
+            this.from = from; this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= 1) {
+                if(from == to)
+                    return;
+                final int offset = from * PARTITION_SIZE;
+                partials[from] = scan(data, offset, Math.min(PARTITION_SIZE, data.length - offset));
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new ScanTask(data, partials, from, middle), new ScanTask(data, partials, middle, to));
+        }
+    }
+
+    /**
+     * Scans a given selection of pixel data like {@link #scan(int[])}, but first counts
+     * how often each distinct ARGB value occurs, then clusters every distinct value
+     * once, in order of first occurrence, as a weighted add of its count. Images with
+     * few distinct colors, such as screenshots and sprite sheets, scan much faster.
+     *
+     * Repeats of a color always end up in the same PixelCloud, where {@link #scan(int[])}
+     * could split them when a PixelCloud's bounds move between repeats, so the two
+     * modes can group pixels slightly differently.
+     *
+     * @param data Integer array of pixel data
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> scanDistinct(int[] data) {
+
+        final IntCountMap counts = new IntCountMap();
+        counts.add(data, 0, data.length);
+
+        final CloudIndex index = new CloudIndex(epsilon, recordMembers);
+        final PixelCloud[] assigned = recordMembers ? new PixelCloud[counts.size()] : null;
+
+        for(int i = 0; i < counts.size(); i++) {
+
+            final Color pixel = Color.ofRGB(counts.getKey(i));
 
             if(pixel.getAlpha() < 0.01f)
                 continue;
 
-            boolean found = false;
-            for(final PixelCloud cloud : groups) {
-                if(cloud.isSimilar(pixel, epsilon)) {
-                    cloud.add(pixel);
-                    found = true;
-                    break;
-                }
-            }
+            final PixelCloud cloud = index.add(pixel, counts.getCount(i));
+            if(recordMembers)
+                assigned[i] = cloud;
+        }
 
-            if(!found) {
-                final PixelCloud cloud = new PixelCloud();
-                cloud.add(pixel);
-                groups.add(cloud);
+        if(recordMembers) {
+            for(int i = 0; i < data.length; i++) {
+                final PixelCloud cloud = assigned[counts.indexOf(data[i])];
+                if(cloud != null)
+                    cloud.addMember(i);
             }
         }
 
-        return groups;
+        return index.getClouds();
     }
 }
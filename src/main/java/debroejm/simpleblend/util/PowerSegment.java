@@ -0,0 +1,38 @@
+package debroejm.simpleblend.util;
+
+/**
+ * CurveSegment for a small integral exponential modifier, evaluated with
+ * repeated multiplication instead of <code>Math.pow</code>.
+ */
+final class PowerSegment implements CurveSegment {
+
+    static final int MAX_POWER = 8;
+
+    private final double slope;
+    private final double intercept;
+    private final int power;
+
+    PowerSegment(final float slope, final float intercept, final int power) {
+        this.slope = slope;
+        this.intercept = intercept;
+        this.power = power;
+    }
+
+    private double pow(final double x) {
+        double result = x;
+        for(int i = 1; i < power; i++)
+            result *= x;
+        return result;
+    }
+
+    @Override
+    public float apply(final float x) {
+        return (float) (slope * pow(x) + intercept);
+    }
+
+    @Override
+    public void apply(final float[] in, final int inOffset, final float[] out, final int outOffset, final int length) {
+        for(int i = 0; i < length; i++)
+            out[outOffset+i] = (float) (slope * pow(in[inOffset+i]) + intercept);
+    }
+}
@@ -0,0 +1,121 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Color;
+import debroejm.simpleblend.PixelSurface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds connected regions of similar color in a single pass over an image, using
+ * union-find over region labels. Only the labels of the previous and current row
+ * are kept, so memory is bounded by the image width plus the amount of labels.
+ *
+ * A pixel joins the region of its left or upper neighbour if it is similar to that
+ * region's PixelCloud, preferring the left one. If it is similar to both regions,
+ * they are united into the one with the lower label, which is the one created first.
+ */
+final class RegionLabeler {
+
+    private final float epsilon;
+    private final boolean recordMembers;
+
+    /**
+     * Parent label of every label; a label is a root if it is its own parent.
+     */
+    private int[] parents = new int[64];
+
+    /**
+     * PixelCloud of every root label; <code>null</code> for labels that are not roots.
+     */
+    private final List<PixelCloud> clouds = new ArrayList<>();
+
+    RegionLabeler(final float epsilon, final boolean recordMembers) {
+        this.epsilon = epsilon;
+        this.recordMembers = recordMembers;
+    }
+
+    List<PixelCloud> label(final PixelSurface surface) {
+        final int width = surface.getWidth();
+        final int[][] rows = { new int[width], new int[width] };
+        surface.forEachRow((y, pixels, offset, length) ->
+                label(pixels, offset, width, y, rows[(y + 1) & 1], rows[y & 1]));
+
+        final List<PixelCloud> regions = new ArrayList<>();
+        for(final PixelCloud cloud : clouds) {
+            if(cloud != null)
+                regions.add(cloud);
+        }
+        return regions;
+    }
+
+    /**
+     * Labels a single row of pixels, given the labels of the previous row.
+     */
+    private void label(
+            final int[] pixels, final int offset, final int width, final int y,
+            final int[] previous, final int[] current
+    ) {
+        for(int x = 0; x < width; x++) {
+            final int index = y * width + x;
+            final Color color = Color.ofRGB(pixels[offset + x]);
+            if(color.getAlpha() < 0.01f) {
+                current[x] = -1;
+                continue;
+            }
+
+            final int left = x > 0 && current[x-1] >= 0 ? find(current[x-1]) : -1;
+            final int up = y > 0 && previous[x] >= 0 ? find(previous[x]) : -1;
+            final boolean joinLeft = left >= 0 && clouds.get(left).isSimilar(color, epsilon);
+            final boolean joinUp = up >= 0 && up != left && clouds.get(up).isSimilar(color, epsilon);
+
+            final int label;
+            if(joinLeft && joinUp)
+                label = union(left, up);
+            else if(joinLeft)
+                label = left;
+            else if(joinUp)
+                label = up;
+            else
+                label = create();
+
+            final PixelCloud cloud = clouds.get(label);
+            cloud.add(color, x, y);
+            if(recordMembers)
+                cloud.addMember(index);
+            current[x] = label;
+        }
+    }
+
+    private int create() {
+        final int label = clouds.size();
+        if(label == parents.length)
+            parents = Arrays.copyOf(parents, label * 2);
+        parents[label] = label;
+        clouds.add(new PixelCloud(recordMembers));
+        return label;
+    }
+
+    /**
+     * Finds the root label of a label, halving the path to it on the way.
+     */
+    private int find(int label) {
+        while(parents[label] != label) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+
+    /**
+     * Unites two root labels into the lower one, merging their PixelClouds.
+     */
+    private int union(final int a, final int b) {
+        final int root = Math.min(a, b), child = Math.max(a, b);
+        parents[child] = root;
+        clouds.get(root).merge(clouds.get(child));
+        clouds.set(child, null);
+        return root;
+    }
+}
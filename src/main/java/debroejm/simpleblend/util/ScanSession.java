@@ -0,0 +1,127 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.PixelSurface;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Stateful, incremental version of {@link PixelScanner#scan(int[])}. Pixel data is
+ * handed to a ScanSession in chunks, such as rows from an image decoder or frames
+ * of a video, and every chunk is grouped into the PixelClouds found so far. The
+ * current PixelClouds can be retrieved at any time, so images larger than the heap
+ * can be scanned, and palettes can be tracked across frames without rescanning.
+ *
+ * Handing a ScanSession all pixel data in any amount of chunks groups it exactly
+ * as scanning the concatenated data at once would. Pixel indices recorded as
+ * members count every pixel handed to the session since it was created or reset;
+ * since they are ints, a session recording members accepts at most
+ * <code>Integer.MAX_VALUE + 1</code> pixels before it has to be reset.
+ *
+ * A ScanSession is not thread-safe.
+ */
+public final class ScanSession {
+
+    /**
+     * Amount of pixels copied at a time out of IntBuffers without a backing array.
+     */
+    private static final int BUFFER_CHUNK = 4096;
+
+    private final CloudIndex index;
+    private final boolean recordMembers;
+    private long position = 0;
+    private int[] scratch = null;
+
+    ScanSession(final float epsilon, final boolean recordMembers) {
+        this.index = new CloudIndex(epsilon, recordMembers);
+        this.recordMembers = recordMembers;
+    }
+
+    /**
+     * Groups a chunk of 32-bit ARGB pixel data into this session's PixelClouds.
+     *
+     * @param data Integer array of pixel data
+     */
+    public void add(final int[] data) {
+        add(data, 0, data.length);
+    }
+
+    /**
+     * Groups a run of 32-bit ARGB pixel data into this session's PixelClouds.
+     *
+     * @param data Integer array of pixel data
+     * @param offset Index of the first pixel
+     * @param length Number of pixels to group
+     * @throws IllegalStateException if members are recorded and the index of a pixel
+     *         would no longer fit in an int
+     */
+    public void add(final int[] data, final int offset, final int length) {
+        if(offset < 0 || length < 0 || length > data.length - offset)
+            throw new IllegalArgumentException("Run is outside of the pixel data");
+        if(recordMembers && position + length > (long) Integer.MAX_VALUE + 1)
+            throw new IllegalStateException("Member indices past " + Integer.MAX_VALUE + " cannot be recorded");
+        for(int i = offset; i < offset + length; i++)
+            index.add(data[i], (int) position++);
+    }
+
+    /**
+     * Groups the remaining 32-bit ARGB pixels of a buffer into this session's
+     * PixelClouds, advancing the buffer's position to its limit.
+     *
+     * @param buffer IntBuffer of pixel data
+     */
+    public void add(final IntBuffer buffer) {
+        if(buffer.hasArray()) {
+            add(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        if(scratch == null)
+            scratch = new int[BUFFER_CHUNK];
+        while(buffer.hasRemaining()) {
+            final int length = Math.min(scratch.length, buffer.remaining());
+            buffer.get(scratch, 0, length);
+            add(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Groups every pixel of a PixelSurface into this session's PixelClouds, in rows
+     * from top to bottom.
+     *
+     * @param surface PixelSurface of pixel data
+     */
+    public void add(final PixelSurface surface) {
+        surface.forEachRow((y, pixels, offset, length) -> add(pixels, offset, length));
+    }
+
+    /**
+     * Retrieves the amount of pixels handed to this session, including transparent ones.
+     *
+     * @return Amount of pixels
+     */
+    public long getPixelCount() {
+        return position;
+    }
+
+    /**
+     * Retrieves the current PixelClouds, in the order they were created. The returned
+     * Collection is a copy, but the PixelClouds in it keep growing as more pixel data
+     * is added.
+     *
+     * @return Collection of PixelClouds
+     */
+    public Collection<PixelCloud> getClouds() {
+        return Collections.unmodifiableList(new ArrayList<>(index.getClouds()));
+    }
+
+    /**
+     * Removes all PixelClouds and resets the pixel count, as if this session was new.
+     */
+    public void reset() {
+        index.clear();
+        position = 0;
+    }
+}
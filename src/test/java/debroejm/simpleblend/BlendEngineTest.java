@@ -0,0 +1,53 @@
+package debroejm.simpleblend;
+
+import debroejm.simpleblend.curve.ColorGraph;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BlendEngineTest {
+
+    static final int WIDTH = 317;
+    static final int HEIGHT = 211;
+
+    private void checkEngineMatchesSequential(BlendAlgorithm algorithm) {
+        int[] top = new int[WIDTH * HEIGHT];
+        int[] bottom = new int[WIDTH * HEIGHT];
+        System.arraycopy(BlendTypeTest.randomPixels(9), 0, top, 0, BlendTypeTest.PIXELS);
+        System.arraycopy(BlendTypeTest.randomPixels(10), 0, bottom, 0, BlendTypeTest.PIXELS);
+        for(int i = BlendTypeTest.PIXELS; i < top.length; i++) {
+            top[i] = top[i % BlendTypeTest.PIXELS] * 31 + i;
+            bottom[i] = bottom[i % BlendTypeTest.PIXELS] ^ i;
+        }
+
+        int[] expected = new int[top.length];
+        algorithm.blend(top, bottom, expected, 0, top.length);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BlendEngine engine = new BlendEngine(pool, 1000, 0);
+            int[] actual = new int[top.length];
+            engine.blend(algorithm, top, bottom, actual, 0, top.length);
+            assertArrayEquals("Parallel run blend did not match sequential blend", expected, actual);
+
+            actual = new int[top.length];
+            engine.blend(algorithm, top, 0, WIDTH, bottom, 0, WIDTH, actual, 0, WIDTH, WIDTH, HEIGHT);
+            assertArrayEquals("Parallel region blend did not match sequential blend", expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test public void engineMatchesSequential_overlay() { checkEngineMatchesSequential(BlendType.OVERLAY); }
+    @Test public void engineMatchesSequential_lookup()  { checkEngineMatchesSequential(BlendType.SCREEN.lookup()); }
+
+    @Test
+    public void engineMatchesSequential_colorGraph() {
+        ColorGraph graph = new ColorGraph();
+        graph.getCurve(Channel.RED).addPoint(0.25f, 0.75f);
+        graph.getCurve(Channel.BLUE).addPoint(0.5f, 0.2f, 2.0f);
+        checkEngineMatchesSequential(graph);
+    }
+}
@@ -0,0 +1,46 @@
+package debroejm.simpleblend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlendTableTest {
+
+    static final int[] ALPHAS = { 0x00, 0x01, 0x40, 0x80, 0xC3, 0xFE, 0xFF };
+
+    private void checkTableMatchesFloat(BlendType type) {
+        BlendTable table = type.lookup();
+        assertSame("Lookup table was not shared", table, type.lookup());
+        for(int alpha : ALPHAS) {
+            for(int t = 0; t < 256; t++) {
+                for(int b = 0; b < 256; b++) {
+                    int top = alpha << 24 | t << 16 | (255-t) << 8 | (t ^ b);
+                    int bottom = 0x7F000000 | b << 16 | t << 8 | (255-b);
+                    assertEquals("Lookup blend did not match float blend for " + type,
+                            type.blend(top, bottom), table.blend(top, bottom));
+                }
+            }
+        }
+    }
+
+    @Test public void tableMatchesFloat_multiply()    { checkTableMatchesFloat(BlendType.MULTIPLY    ); }
+    @Test public void tableMatchesFloat_screen()      { checkTableMatchesFloat(BlendType.SCREEN      ); }
+    @Test public void tableMatchesFloat_overlay()     { checkTableMatchesFloat(BlendType.OVERLAY     ); }
+    @Test public void tableMatchesFloat_darken()      { checkTableMatchesFloat(BlendType.DARKEN      ); }
+    @Test public void tableMatchesFloat_lighten()     { checkTableMatchesFloat(BlendType.LIGHTEN     ); }
+    @Test public void tableMatchesFloat_difference()  { checkTableMatchesFloat(BlendType.DIFFERENCE  ); }
+    @Test public void tableMatchesFloat_plusLighter() { checkTableMatchesFloat(BlendType.PLUS_LIGHTER); }
+    @Test public void tableMatchesFloat_plusDarker()  { checkTableMatchesFloat(BlendType.PLUS_DARKER ); }
+    @Test public void tableMatchesFloat_divide()      { checkTableMatchesFloat(BlendType.DIVIDE      ); }
+
+    @Test
+    public void bulkTableMatchesFloat() {
+        int[] top = BlendTypeTest.randomPixels(7);
+        int[] bottom = BlendTypeTest.randomPixels(8);
+        int[] expected = new int[top.length];
+        int[] actual = new int[top.length];
+        BlendType.SCREEN.blend(top, bottom, expected, 0, top.length);
+        BlendType.SCREEN.lookup().blend(top, bottom, actual, 0, top.length);
+        assertArrayEquals("Bulk lookup blend did not match float blend", expected, actual);
+    }
+}
@@ -0,0 +1,164 @@
+package debroejm.simpleblend;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlendTypeTest {
+
+    static final int PIXELS = 4096;
+
+    static int[] randomPixels(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[PIXELS];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+        // Make sure the edge cases of fully clear and fully opaque are covered
+        pixels[0] = 0;
+        pixels[1] = 0xFFFFFFFF;
+        pixels[2] = 0x00FFFFFF;
+        pixels[3] = 0xFF000000;
+        return pixels;
+    }
+
+    private void checkBulkMatchesScalar(BlendType type) {
+        int[] top = randomPixels(1);
+        int[] bottom = randomPixels(2);
+        int[] dst = new int[PIXELS];
+        type.blend(top, bottom, dst, 0, PIXELS);
+        for(int i = 0; i < PIXELS; i++) {
+            int expected = type.blend(Color.ofRGB(top[i]), Color.ofRGB(bottom[i])).getRGB();
+            assertEquals("Bulk blend did not match scalar blend for " + type, expected, dst[i]);
+            assertEquals("Packed blend did not match scalar blend for " + type, expected, type.blend(top[i], bottom[i]));
+        }
+    }
+
+    @Test public void bulkMatchesScalar_multiply()    { checkBulkMatchesScalar(BlendType.MULTIPLY    ); }
+    @Test public void bulkMatchesScalar_screen()      { checkBulkMatchesScalar(BlendType.SCREEN      ); }
+    @Test public void bulkMatchesScalar_overlay()     { checkBulkMatchesScalar(BlendType.OVERLAY     ); }
+    @Test public void bulkMatchesScalar_darken()      { checkBulkMatchesScalar(BlendType.DARKEN      ); }
+    @Test public void bulkMatchesScalar_lighten()     { checkBulkMatchesScalar(BlendType.LIGHTEN     ); }
+    @Test public void bulkMatchesScalar_difference()  { checkBulkMatchesScalar(BlendType.DIFFERENCE  ); }
+    @Test public void bulkMatchesScalar_plusLighter() { checkBulkMatchesScalar(BlendType.PLUS_LIGHTER); }
+    @Test public void bulkMatchesScalar_plusDarker()  { checkBulkMatchesScalar(BlendType.PLUS_DARKER ); }
+    @Test public void bulkMatchesScalar_divide()      { checkBulkMatchesScalar(BlendType.DIVIDE      ); }
+
+    @Test
+    public void colorBlendKeepsFloatHSB() {
+        int[] top = randomPixels(11);
+        int[] bottom = randomPixels(12);
+        for(BlendType type : BlendType.values()) {
+            for(int i = 0; i < 512; i++) {
+                // The original per-component float blend, with HSB from the unrounded result
+                float[] t = Color.ofRGB(top[i]).getRGBComponents();
+                float[] b = Color.ofRGB(bottom[i]).getRGBComponents();
+                float[] result = new float[4];
+                for(int c = 1; c < 4; c++) {
+                    float value = type.blend(Channel.values()[c], t[c], b[c]);
+                    result[c] = BlendAlgorithm.clamp(b[c] + (value - b[c]) * t[0], 0.0f, 1.0f);
+                }
+                Color expected = Color.ofRGB(result[1], result[2], result[3], b[0]);
+                Color actual = type.blend(Color.ofRGB(top[i]), Color.ofRGB(bottom[i]));
+                assertEquals("Blended RGB changed for " + type, expected.getRGB(), actual.getRGB());
+                assertEquals("Blended HSB changed for " + type, expected.getHSB(), actual.getHSB());
+            }
+        }
+    }
+
+    @Test
+    public void defaultBulkMatchesScalar() {
+        BlendAlgorithm algorithm = (c,a,b) -> (a+b) * 0.5f;
+        int[] top = randomPixels(3);
+        int[] bottom = randomPixels(4);
+        int[] dst = new int[PIXELS];
+        algorithm.blend(top, bottom, dst, 0, PIXELS);
+        for(int i = 0; i < PIXELS; i++) {
+            int expected = algorithm.blend(Color.ofRGB(top[i]), Color.ofRGB(bottom[i])).getRGB();
+            assertEquals("Default bulk blend did not match scalar blend", expected, dst[i]);
+        }
+    }
+
+    @Test
+    public void regionBlend() {
+        int[] top = randomPixels(5);
+        int[] bottom = randomPixels(6);
+        int[] dst = new int[PIXELS];
+        // 10x20 region; top stride 64, bottom stride 32, destination stride 16
+        BlendType.OVERLAY.blend(top, 7, 64, bottom, 3, 32, dst, 1, 16, 10, 20);
+        for(int y = 0; y < 20; y++) {
+            for(int x = 0; x < 16; x++) {
+                int expected = x < 10
+                        ? BlendType.OVERLAY.blend(top[7 + y*64 + x], bottom[3 + y*32 + x])
+                        : 0;
+                assertEquals("Region blend wrote an unexpected value", expected, dst[1 + y*16 + x]);
+            }
+        }
+    }
+
+    private static int[] premultiplied(long seed) {
+        int[] pixels = randomPixels(seed);
+        PackedColor.premultiply(pixels, 0, pixels, 0, PIXELS);
+        return pixels;
+    }
+
+    private static void assertClose(String message, int expected, int actual, int tolerance) {
+        for(int shift = 0; shift < 32; shift += 8) {
+            int difference = Math.abs((expected >>> shift & 0xFF) - (actual >>> shift & 0xFF));
+            if(difference > tolerance)
+                fail(message + ": expected " + Integer.toHexString(expected) + " got " + Integer.toHexString(actual));
+        }
+    }
+
+    private void checkPremultiplied(BlendType type) {
+        int[] top = premultiplied(7);
+        int[] bottom = premultiplied(8);
+        for(int i = 0; i < 256; i++)
+            top[1000 + i] = 0;
+        BlendAlgorithm generic = type::blend;
+        int[] dst = new int[PIXELS];
+        type.blendPremultiplied(top, 0, bottom, 0, dst, 0, PIXELS);
+        for(int i = 0; i < PIXELS; i++) {
+            int result = type.blendPremultiplied(top[i], bottom[i]);
+            assertEquals("Bulk composite did not match scalar composite for " + type, result, dst[i]);
+            assertEquals("Table composite did not match type for " + type, result, type.lookup().blendPremultiplied(top[i], bottom[i]));
+            for(int shift = 0; shift < 24; shift += 8)
+                assertTrue("Composite is not premultiplied for " + type, (result >> shift & 0xFF) <= result >>> 24);
+            if(type != BlendType.DIVIDE)
+                assertClose("Composite did not match the generic composite for " + type, generic.blendPremultiplied(top[i], bottom[i]), result, 1);
+        }
+        assertEquals(bottom[1000], type.blendPremultiplied(0, bottom[1000]));
+        assertEquals(top[5], type.blendPremultiplied(top[5], 0));
+
+        // Over an opaque bottom, compositing is blending
+        for(int i = 0; i < PIXELS; i++) {
+            int opaque = bottom[i] | 0xFF000000;
+            int expected = PackedColor.premultiply(type.blend(PackedColor.unpremultiply(top[i]), opaque));
+            int tolerance = (top[i] >>> 24) < 16 ? 16 : 2;
+            if(type != BlendType.DIVIDE)
+                assertClose("Composite over opaque bottom did not match blend for " + type, expected, type.blendPremultiplied(top[i], opaque), tolerance);
+        }
+    }
+
+    @Test public void premultiplied_multiply()    { checkPremultiplied(BlendType.MULTIPLY    ); }
+    @Test public void premultiplied_screen()      { checkPremultiplied(BlendType.SCREEN      ); }
+    @Test public void premultiplied_overlay()     { checkPremultiplied(BlendType.OVERLAY     ); }
+    @Test public void premultiplied_darken()      { checkPremultiplied(BlendType.DARKEN      ); }
+    @Test public void premultiplied_lighten()     { checkPremultiplied(BlendType.LIGHTEN     ); }
+    @Test public void premultiplied_difference()  { checkPremultiplied(BlendType.DIFFERENCE  ); }
+    @Test public void premultiplied_plusLighter() { checkPremultiplied(BlendType.PLUS_LIGHTER); }
+    @Test public void premultiplied_plusDarker()  { checkPremultiplied(BlendType.PLUS_DARKER ); }
+    @Test public void premultiplied_divide()      { checkPremultiplied(BlendType.DIVIDE      ); }
+
+    @Test
+    public void premultipliedSkipsTransparentRuns() {
+        int[] top = new int[PIXELS];
+        int[] bottom = premultiplied(9);
+        int[] expected = bottom.clone();
+        top[10] = 0xFF336699;
+        expected[10] = BlendType.SCREEN.blendPremultiplied(top[10], bottom[10]);
+        BlendType.SCREEN.blendPremultiplied(top, 0, bottom, 0, bottom, 0, PIXELS);
+        assertArrayEquals(expected, bottom);
+    }
+}
@@ -19,6 +19,24 @@ public class ColorTest extends ColorTestBase {
     @Test public void ofRGBintTest_cyan()      { checkColor(Color.ofRGB(CYAN),       1.0f, 0.0f,   1.0f,   1.0f,   0.5f,   1.0f, 1.0f  ); }
     @Test public void ofRGBintTest_purple()    { checkColor(Color.ofRGB(PURPLE),     1.0f, 1.0f,   0.0f,   1.0f,   0.833f, 1.0f, 1.0f  ); }
 
+    private void checkLazyHSB(int rgb) {
+        int hsb = Color.convertColorIntFromFloat(Color.convertRGBtoHSB(Color.convertColorArrayFromInt(rgb)));
+        assertEquals("Lazily computed HSB did not match eager conversion", hsb, Color.ofRGB(rgb).getHSB());
+    }
+
+    @Test public void lazyHSBTest_clear()     { checkLazyHSB(CLEAR     ); }
+    @Test public void lazyHSBTest_white()     { checkLazyHSB(WHITE     ); }
+    @Test public void lazyHSBTest_lightGray() { checkLazyHSB(LIGHT_GRAY); }
+    @Test public void lazyHSBTest_gray()      { checkLazyHSB(GRAY      ); }
+    @Test public void lazyHSBTest_darkGray()  { checkLazyHSB(DARK_GRAY ); }
+    @Test public void lazyHSBTest_black()     { checkLazyHSB(BLACK     ); }
+    @Test public void lazyHSBTest_red()       { checkLazyHSB(RED       ); }
+    @Test public void lazyHSBTest_green()     { checkLazyHSB(GREEN     ); }
+    @Test public void lazyHSBTest_blue()      { checkLazyHSB(BLUE      ); }
+    @Test public void lazyHSBTest_yellow()    { checkLazyHSB(YELLOW    ); }
+    @Test public void lazyHSBTest_cyan()      { checkLazyHSB(CYAN      ); }
+    @Test public void lazyHSBTest_purple()    { checkLazyHSB(PURPLE    ); }
+
     @Test public void ofRGBfloatTest_clear()     { checkColor(Color.ofRGB(0.0f,   0.0f,   0.0f,   0.0f), 0.0f, 0.0f,   0.0f,   0.0f,   0.0f,   0.0f, 0.0f  ); }
     @Test public void ofRGBfloatTest_white()     { checkColor(Color.ofRGB(1.0f,   1.0f,   1.0f,   1.0f), 1.0f, 1.0f,   1.0f,   1.0f,   0.0f,   0.0f, 1.0f  ); }
     @Test public void ofRGBfloatTest_lightGray() { checkColor(Color.ofRGB(0.753f, 0.753f, 0.753f, 1.0f), 1.0f, 0.753f, 0.753f, 0.753f, 0.0f,   0.0f, 0.753f); }
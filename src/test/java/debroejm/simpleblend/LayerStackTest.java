@@ -0,0 +1,84 @@
+package debroejm.simpleblend;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class LayerStackTest {
+
+    static final int WIDTH = 300;
+    static final int HEIGHT = 100;
+
+    private static int[] pixels(long seed) {
+        int[] random = BlendTypeTest.randomPixels(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random[i % random.length] ^ (i * 0x9E3779B9);
+        return pixels;
+    }
+
+    @Test
+    public void compositeMatchesLayeredBlend() {
+        int[] base = pixels(11);
+        int[][] layers = { pixels(12), pixels(13), pixels(14) };
+        BlendAlgorithm[] algorithms = { BlendType.MULTIPLY, BlendType.SCREEN.lookup(), BlendType.OVERLAY };
+
+        LayerStack stack = new LayerStack();
+        int[] expected = base.clone();
+        for(int i = 0; i < layers.length; i++) {
+            stack.addLayer(layers[i], algorithms[i]);
+            algorithms[i].blend(layers[i], expected, expected, 0, expected.length);
+        }
+
+        int[] actual = new int[base.length];
+        stack.composite(base, actual, 0, WIDTH, WIDTH, HEIGHT);
+        assertArrayEquals("Composite did not match layered blend", expected, actual);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            actual = base.clone();
+            stack.composite(new BlendEngine(pool, 512, 0), actual, actual, 0, WIDTH, WIDTH, HEIGHT);
+            assertArrayEquals("Parallel composite did not match layered blend", expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+
+        // A single thread pool hands the whole region to one action
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            actual = base.clone();
+            stack.composite(new BlendEngine(single, 512, 0), actual, actual, 0, WIDTH, WIDTH, HEIGHT);
+            assertArrayEquals("Single thread composite did not match layered blend", expected, actual);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void opacityAndMaskScaleAlpha() {
+        int[] base = { 0xFF336699 };
+        int[] layer = { 0xFFCC8844 };
+        int[] mask = { 0x80000000 };
+
+        LayerStack stack = new LayerStack();
+        stack.addLayer(layer, BlendType.MULTIPLY, 0.5f, mask);
+        int[] actual = new int[1];
+        stack.composite(base, actual, 0, 1);
+
+        // 255 * 0.5 rounds to 128, and 255 * 128/255 * 128/255 rounds to 64
+        int expected = BlendType.MULTIPLY.blend(0x40CC8844, 0xFF336699);
+        assertEquals("Opacity and mask were not applied to layer alpha", expected, actual[0]);
+    }
+
+    @Test
+    public void zeroOpacityKeepsBase() {
+        int[] base = pixels(15);
+        LayerStack stack = new LayerStack();
+        stack.addLayer(pixels(16), BlendType.DIFFERENCE, 0.0f);
+        int[] actual = new int[base.length];
+        stack.composite(base, actual, 0, base.length);
+        assertArrayEquals("Fully transparent layer changed the base", base, actual);
+    }
+}
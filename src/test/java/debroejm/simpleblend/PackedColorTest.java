@@ -0,0 +1,92 @@
+package debroejm.simpleblend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PackedColorTest extends ColorTestBase {
+
+    @Test
+    public void channelExtractionTest() {
+        int color = 0x80402010;
+        assertEquals(0x80, PackedColor.alpha(color));
+        assertEquals(0x40, PackedColor.red(color));
+        assertEquals(0x20, PackedColor.green(color));
+        assertEquals(0x10, PackedColor.blue(color));
+        assertEquals(color, PackedColor.pack(0x80, 0x40, 0x20, 0x10));
+    }
+
+    @Test
+    public void unpackOffsetTest() {
+        float[] values = new float[6];
+        PackedColor.unpack(PURPLE, values, 2);
+        assertArrayEquals("Unpacked values did not match array conversion",
+                Color.convertColorArrayFromInt(PURPLE), new float[]{ values[2], values[3], values[4], values[5] }, 0.0f);
+        assertEquals("Unpack wrote before offset", 0.0f, values[1], 0.0f);
+    }
+
+    @Test
+    public void inPlaceConversionTest() {
+        float[] values = Color.convertColorArrayFromInt(0xFF336699);
+        float[] expected = Color.convertHSBtoRGB(Color.convertRGBtoHSB(values));
+        assertSame(values, PackedColor.rgbToHSB(values, values));
+        assertSame(values, PackedColor.hsbToRGB(values, values));
+        assertArrayEquals("In place conversion did not match allocating conversion", expected, values, 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeValidationTest() {
+        PackedColor.rgbToHSB(new float[]{ 1.0f, 1.5f, 0.0f, 0.0f }, new float[4]);
+    }
+
+    private void checkPackedHSB(int rgb) {
+        Color color = Color.ofRGB(rgb);
+        int hsb = PackedColor.rgbToHSB(rgb);
+        assertEquals("Packed RGB to HSB did not match Color", color.getHSB(), hsb);
+        assertEquals("Packed HSB to RGB did not match Color", Color.ofHSB(hsb).getRGB(), PackedColor.hsbToRGB(hsb));
+    }
+
+    @Test public void packedHSBTest_clear()     { checkPackedHSB(CLEAR     ); }
+    @Test public void packedHSBTest_white()     { checkPackedHSB(WHITE     ); }
+    @Test public void packedHSBTest_gray()      { checkPackedHSB(GRAY      ); }
+    @Test public void packedHSBTest_red()       { checkPackedHSB(RED       ); }
+    @Test public void packedHSBTest_green()     { checkPackedHSB(GREEN     ); }
+    @Test public void packedHSBTest_blue()      { checkPackedHSB(BLUE      ); }
+    @Test public void packedHSBTest_yellow()    { checkPackedHSB(YELLOW    ); }
+    @Test public void packedHSBTest_cyan()      { checkPackedHSB(CYAN      ); }
+    @Test public void packedHSBTest_purple()    { checkPackedHSB(PURPLE    ); }
+
+    @Test
+    public void premultiplyTest() {
+        assertEquals(0x80201008, PackedColor.premultiply(0x80402010));
+        assertEquals(0xFF336699, PackedColor.premultiply(0xFF336699));
+        assertEquals(0, PackedColor.premultiply(0x00FFFFFF));
+        assertEquals(0x80402010, PackedColor.unpremultiply(0x80201008));
+        assertEquals(0, PackedColor.unpremultiply(0x00000000));
+        assertEquals("Components above the alpha were not clamped", 0x10FFFFFF, PackedColor.unpremultiply(0x10FFFFFF));
+
+        int[] colors = BlendTypeTest.randomPixels(5);
+        for(int color : colors) {
+            int premultiplied = PackedColor.premultiply(color);
+            for(int shift = 0; shift < 24; shift += 8)
+                assertTrue("Premultiplied component above alpha", (premultiplied >> shift & 0xFF) <= premultiplied >>> 24);
+            assertEquals("Premultiplied color did not round trip",
+                    premultiplied, PackedColor.premultiply(PackedColor.unpremultiply(premultiplied)));
+        }
+    }
+
+    @Test
+    public void bulkPremultiplyTest() {
+        int[] colors = BlendTypeTest.randomPixels(6);
+        for(int i = 100; i < 200; i++)
+            colors[i] |= 0xFF000000;
+        int[] premultiplied = new int[colors.length + 3];
+        PackedColor.premultiply(colors, 0, premultiplied, 3, colors.length);
+        int[] restored = premultiplied.clone();
+        PackedColor.unpremultiply(restored, 3, restored, 3, colors.length);
+        for(int i = 0; i < colors.length; i++) {
+            assertEquals("Bulk premultiply did not match scalar", PackedColor.premultiply(colors[i]), premultiplied[i+3]);
+            assertEquals("Bulk unpremultiply did not match scalar", PackedColor.unpremultiply(premultiplied[i+3]), restored[i+3]);
+        }
+    }
+}
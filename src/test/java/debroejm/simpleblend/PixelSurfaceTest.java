@@ -0,0 +1,142 @@
+package debroejm.simpleblend;
+
+import debroejm.simpleblend.curve.ColorGraph;
+import debroejm.simpleblend.util.PixelCloud;
+import debroejm.simpleblend.util.PixelScanner;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PixelSurfaceTest {
+
+    static final int WIDTH = 97;
+    static final int HEIGHT = 61;
+
+    static int[] randomPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for(int i = 0; i < length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    /**
+     * Copies ARGB pixels into a direct little-endian buffer in the given format.
+     */
+    static PixelSurface direct(int[] argb, PixelFormat format) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(argb.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for(int pixel : argb)
+            buffer.putInt(format.fromARGB(pixel));
+        buffer.flip();
+        return PixelSurface.wrap(buffer, WIDTH, HEIGHT, format);
+    }
+
+    static int[] pixelsOf(PixelSurface surface) {
+        int[] pixels = new int[surface.getWidth() * surface.getHeight()];
+        for(int y = 0; y < surface.getHeight(); y++)
+            surface.getRow(0, y, surface.getWidth(), pixels, y * surface.getWidth());
+        return pixels;
+    }
+
+    @Test
+    public void formatsRoundTrip() {
+        for(PixelFormat format : PixelFormat.values()) {
+            if(format == PixelFormat.ARGB_PRE) {
+                // Premultiplying loses precision, but premultiplied pixels round trip
+                for(int pixel : randomPixels(1000, 1)) {
+                    int premultiplied = PackedColor.premultiply(pixel);
+                    assertEquals("Format did not round trip", premultiplied, format.fromARGB(format.toARGB(premultiplied)));
+                }
+                continue;
+            }
+            boolean opaque = format == PixelFormat.XRGB || format == PixelFormat.XBGR;
+            for(int pixel : randomPixels(1000, 1))
+                assertEquals("Format did not round trip",
+                        opaque ? pixel | 0xFF000000 : pixel, format.toARGB(format.fromARGB(pixel)));
+        }
+        assertEquals(0xFF223344, PixelFormat.XRGB.toARGB(0x11223344));
+        assertEquals(0xFF223344, PixelFormat.XBGR.toARGB(0x11443322));
+        assertEquals(0x00443322, PixelFormat.XBGR.fromARGB(0x11223344));
+        assertEquals(0x11223344, PixelFormat.RGBA.toARGB(0x22334411));
+        assertEquals(0x11223344, PixelFormat.ABGR.toARGB(0x11443322));
+        assertEquals(0x11223344, PixelFormat.BGRA.toARGB(0x44332211));
+    }
+
+    @Test
+    public void subSurfacesShareTheirPixels() {
+        int[] pixels = randomPixels(WIDTH * HEIGHT, 2);
+        for(PixelSurface surface : new PixelSurface[]{ PixelSurface.wrap(pixels.clone(), WIDTH, HEIGHT), direct(pixels, PixelFormat.BGRA) }) {
+            PixelSurface view = surface.subSurface(10, 20, 30, 15);
+            assertEquals(30, view.getWidth());
+            assertEquals(15, view.getHeight());
+            assertEquals(pixels[25 * WIDTH + 13], view.getPixel(3, 5));
+            view.setPixel(3, 5, 0x12345678);
+            assertEquals("View did not share pixels", 0x12345678, surface.getPixel(13, 25));
+            assertEquals(pixels[20 * WIDTH + 10], view.subSurface(0, 0, 1, 1).getPixel(0, 0));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void subSurfacesStayInBounds() {
+        PixelSurface.allocate(WIDTH, HEIGHT).subSurface(WIDTH - 5, 0, 10, 1);
+    }
+
+    @Test
+    public void surfaceBlendingMatchesArrayBlending() {
+        int[] top = randomPixels(WIDTH * HEIGHT, 3), bottom = randomPixels(WIDTH * HEIGHT, 4);
+        int[] expected = new int[top.length];
+        BlendType.OVERLAY.blend(top, bottom, expected, 0, top.length);
+
+        PixelSurface heapDst = PixelSurface.allocate(WIDTH, HEIGHT);
+        BlendType.OVERLAY.blend(PixelSurface.wrap(top, WIDTH, HEIGHT), PixelSurface.wrap(bottom, WIDTH, HEIGHT), heapDst);
+        assertArrayEquals("Heap surface blend did not match array blend", expected, heapDst.array());
+
+        PixelSurface directDst = direct(new int[top.length], PixelFormat.RGBA);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new BlendEngine(pool, 500, 0).blend(BlendType.OVERLAY,
+                    direct(top, PixelFormat.BGRA), direct(bottom, PixelFormat.ARGB), directDst);
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals("Direct surface blend did not match array blend", expected, pixelsOf(directDst));
+    }
+
+    @Test
+    public void surfaceCurvesMatchArrayCurves() {
+        ColorGraph graph = new ColorGraph();
+        graph.getCurve(Channel.RED).addPoint(0.3f, 0.6f);
+        graph.getCurve(Channel.BLUE).addPoint(0.5f, 0.2f, 2.0f);
+        int[] src = randomPixels(WIDTH * HEIGHT, 5);
+        int[] expected = new int[src.length];
+        graph.apply(src, expected, 0.8f);
+
+        PixelSurface surface = direct(src, PixelFormat.ABGR);
+        graph.apply(surface, surface, 0.8f);
+        assertArrayEquals("Surface curve did not match array curve", expected, pixelsOf(surface));
+    }
+
+    @Test
+    public void surfaceScanningMatchesArrayScanning() {
+        int[] pixels = randomPixels(WIDTH * HEIGHT, 6);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] &= 0xFFE0E0E0;
+        PixelScanner scanner = new PixelScanner(0.1f);
+        List<PixelCloud> expected = new ArrayList<>(scanner.scan(pixels));
+        List<PixelCloud> actual = new ArrayList<>(scanner.scan(direct(pixels, PixelFormat.BGRA)));
+        assertEquals("Surface scan found a different amount of clouds", expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++)
+            assertEquals("Surface scan grouped pixels differently", expected.get(i).size(), actual.get(i).size());
+
+        assertEquals("Surface regions did not match array regions",
+                scanner.scanRegions(pixels, WIDTH, HEIGHT).size(),
+                scanner.scanRegions(direct(pixels, PixelFormat.RGBA)).size());
+    }
+}
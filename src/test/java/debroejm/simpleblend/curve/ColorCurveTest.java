@@ -0,0 +1,110 @@
+package debroejm.simpleblend.curve;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ColorCurveTest {
+
+    static final float EPSILON = 0.001f;
+
+    static ColorCurve sampleCurve() {
+        ColorCurve curve = new ColorCurve();
+        curve.addPoint(0.2f, 0.4f);
+        curve.addPoint(0.5f, 0.45f, 2.0f);
+        curve.addPoint(0.8f, 0.9f, 0.5f);
+        return curve;
+    }
+
+    @Test
+    public void componentLookupMatchesAt() {
+        ColorCurve curve = sampleCurve();
+        for(int i = 0; i < 256; i++) {
+            assertEquals("Component lookup did not match curve", curve.at(i / 255.0f), curve.lookup(i), 0.0f);
+            assertEquals("Component blend did not match curve blend",
+                    curve.blend(0.6f, i / 255.0f), curve.blendComponent(0.6f, i), 0.0f);
+        }
+    }
+
+    @Test
+    public void floatLookupApproximatesAt() {
+        ColorCurve curve = sampleCurve();
+        for(int i = 0; i <= 1000; i++) {
+            float x = i / 1000.0f;
+            assertEquals("Float lookup was not close to curve", curve.at(x), curve.lookup(x), EPSILON);
+        }
+    }
+
+    @Test
+    public void tablesRebuildAfterChanges() {
+        ColorCurve curve = sampleCurve();
+        curve.lookup(0);
+        curve.lookup(0.5f);
+
+        curve.addPoint(0.1f, 0.9f);
+        assertEquals("Component table was not rebuilt after addPoint", curve.at(0.1f), curve.lookup(0.1f), EPSILON);
+        assertEquals("Component table was not rebuilt after addPoint", curve.at(20 / 255.0f), curve.lookup(20), 0.0f);
+
+        curve.clearRange(0.0f, 0.3f);
+        assertEquals("Float table was not rebuilt after clearRange", curve.at(0.1f), curve.lookup(0.1f), EPSILON);
+
+        curve.clear();
+        for(int i = 0; i < 256; i += 15)
+            assertEquals("Tables were not reset after clear", i / 255.0f, curve.lookup(i), EPSILON);
+    }
+
+    @Test
+    public void snapshotIsUnaffectedByEdits() {
+        ColorCurve curve = sampleCurve();
+        CompiledCurve snapshot = curve.snapshot();
+        assertSame("Snapshot was not cached", snapshot, curve.snapshot());
+        float before = snapshot.at(0.3f);
+
+        curve.addPoint(0.3f, 1.0f);
+        assertEquals("Snapshot changed after addPoint", before, snapshot.at(0.3f), 0.0f);
+        assertNotSame("Snapshot was not rebuilt after addPoint", snapshot, curve.snapshot());
+        assertEquals("Curve did not reflect addPoint", 1.0f, curve.at(0.3f), EPSILON);
+    }
+
+    @Test
+    public void sortedBatchMatchesAt() {
+        ColorCurve curve = sampleCurve();
+        float[] xs = new float[3001];
+        for(int i = 0; i < xs.length; i++)
+            xs[i] = i / 2000.0f - 0.25f;
+        float[] ys = new float[xs.length];
+        curve.at(xs, ys);
+        for(int i = 0; i < xs.length; i++)
+            assertEquals("Sorted batch did not match curve", curve.at(xs[i]), ys[i], 0.0f);
+    }
+
+    @Test
+    public void unsortedBatchMatchesAt() {
+        ColorCurve curve = sampleCurve();
+        Random random = new Random(12);
+        float[] xs = new float[5000];
+        for(int i = 0; i < xs.length; i++)
+            xs[i] = random.nextFloat();
+        xs[7] = 0.5f; xs[8] = 0.2f; xs[9] = 0.8f; xs[10] = Float.NaN;
+        float[] ys = new float[xs.length];
+        curve.at(xs, ys);
+        for(int i = 0; i < xs.length; i++)
+            assertEquals("Unsorted batch did not match curve", curve.at(xs[i]), ys[i], 0.0f);
+    }
+
+    @Test
+    public void batchBlendInPlaceMatchesBlend() {
+        ColorCurve curve = sampleCurve();
+        Random random = new Random(13);
+        float[] values = new float[2500];
+        for(int i = 0; i < values.length; i++)
+            values[i] = random.nextFloat();
+        float[] expected = new float[values.length];
+        for(int i = 0; i < values.length; i++)
+            expected[i] = curve.blend(0.7f, values[i]);
+        curve.blend(0.7f, values, values);
+        assertArrayEquals("In-place batch blend did not match curve blend", expected, values, 0.0f);
+    }
+}
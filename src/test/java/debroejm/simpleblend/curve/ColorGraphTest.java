@@ -0,0 +1,112 @@
+package debroejm.simpleblend.curve;
+
+import debroejm.simpleblend.BlendEngine;
+import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.Color;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ColorGraphTest {
+
+    static ColorGraph sampleGraph() {
+        ColorGraph graph = new ColorGraph();
+        graph.setCurve(Channel.RED, ColorCurveTest.sampleCurve());
+        graph.getCurve(Channel.GREEN).addPoint(0.5f, 0.2f, 3.0f);
+        graph.getCurve(Channel.ALPHA).addPoint(0.3f, 0.6f);
+        return graph;
+    }
+
+    static int[] randomPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for(int i = 0; i < length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    static int applyScalar(ColorGraph graph, int pixel, float strength) {
+        float[] values = Color.convertColorArrayFromInt(pixel);
+        for(Channel channel : Channel.values())
+            values[channel.ordinal()] = graph.getCurve(channel).blend(strength, values[channel.ordinal()]);
+        return Color.convertColorIntFromFloat(values);
+    }
+
+    @Test
+    public void applyMatchesCurves() {
+        ColorGraph graph = sampleGraph();
+        int[] src = randomPixels(10000, 21);
+        int[] dst = new int[src.length];
+        graph.apply(src, dst, 0.75f);
+        for(int i = 0; i < src.length; i++)
+            assertEquals("Applied pixel did not match curves", applyScalar(graph, src[i], 0.75f), dst[i]);
+    }
+
+    @Test
+    public void parallelRegionApplyMatchesSequential() {
+        ColorGraph graph = sampleGraph();
+        int[] src = randomPixels(400 * 300, 22);
+        int[] expected = new int[src.length];
+        graph.apply(src, 0, 400, expected, 0, 400, 400, 300, 1.0f);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[] actual = new int[src.length];
+            graph.apply(new BlendEngine(pool, 1000, 0), src, 0, 400, actual, 0, 400, 400, 300, 1.0f);
+            assertArrayEquals("Parallel apply did not match sequential apply", expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void identityGraphKeepsPixels() {
+        int[] src = randomPixels(1000, 23);
+        int[] dst = new int[src.length];
+        new ColorGraph().apply(src, dst, 1.0f);
+        assertArrayEquals("Identity graph changed pixels", src, dst);
+    }
+
+    @Test
+    public void scanFromDataStretchesChannels() {
+        int[] data = new int[151 * 100];
+        for(int i = 0; i < data.length; i++) {
+            int value = 50 + i % 151;
+            data[i] = 0xFF000000 | value << 16 | value << 8 | 128;
+        }
+        ColorGraph graph = ColorGraph.scanFromData(data, 0.0f, 0);
+        ColorCurve red = graph.getCurve(Channel.RED);
+        assertEquals("Darkest value was not stretched to black", 0.0f, red.at(50 / 255.0f), 0.001f);
+        assertEquals("Brightest value was not stretched to white", 1.0f, red.at(200 / 255.0f), 0.001f);
+        assertEquals("Middle value was not stretched linearly", 0.5f, red.at(125 / 255.0f), 0.001f);
+        assertTrue("Single valued channel was given a curve", graph.getCurve(Channel.BLUE).getPoints().isEmpty());
+        assertTrue("Alpha channel was given a curve", graph.getCurve(Channel.ALPHA).getPoints().isEmpty());
+    }
+
+    @Test
+    public void freezeIsCachedUntilEdited() {
+        ColorGraph graph = sampleGraph();
+        CompiledGraph frozen = graph.freeze();
+        assertSame("Frozen graph was not cached", frozen, graph.freeze());
+
+        float before = frozen.blend(Channel.GREEN, 1.0f, 0.25f);
+        graph.getCurve(Channel.GREEN).addPoint(0.25f, 0.9f);
+        assertEquals("Frozen graph changed after edit", before, frozen.blend(Channel.GREEN, 1.0f, 0.25f), 0.0f);
+        assertNotSame("Frozen graph was not rebuilt after edit", frozen, graph.freeze());
+
+        frozen = graph.freeze();
+        graph.setCurve(Channel.BLUE, new ColorCurve());
+        assertNotSame("Frozen graph was not rebuilt after setCurve", frozen, graph.freeze());
+    }
+
+    @Test
+    public void getAllCurvesReturnsCopy() {
+        ColorGraph graph = new ColorGraph();
+        ColorCurve[] curves = graph.getAllCurves();
+        curves[0] = null;
+        assertNotNull("Curve array was exposed", graph.getCurve(Channel.ALPHA));
+    }
+}
@@ -0,0 +1,158 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.BlendType;
+import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.PixelFormat;
+import debroejm.simpleblend.PixelSurface;
+import debroejm.simpleblend.curve.ColorGraph;
+import debroejm.simpleblend.util.PixelCloud;
+import debroejm.simpleblend.util.PixelScanner;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageSurfacesTest {
+
+    private static final int WIDTH = 67, HEIGHT = 41;
+
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_USHORT_565_RGB
+    };
+
+    private static BufferedImage image(int type, long seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        image.setRGB(0, 0, WIDTH, HEIGHT, MappedBlendTest.randomPixels(WIDTH * HEIGHT, seed), 0, WIDTH);
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static void assertSameImage(String message, BufferedImage expected, BufferedImage actual) {
+        assertArrayEquals(message, pixels(expected), pixels(actual));
+    }
+
+    @Test
+    public void surfacesReadLikeGetRGB() {
+        for(int type : TYPES) {
+            BufferedImage image = image(type, type);
+            PixelSurface surface = ImageSurfaces.wrap(image);
+            assertEquals(WIDTH, surface.getWidth());
+            assertEquals(HEIGHT, surface.getHeight());
+            int[] row = new int[WIDTH];
+            for(int y = 0; y < HEIGHT; y++) {
+                surface.getRow(0, y, WIDTH, row, 0);
+                for(int x = 0; x < WIDTH; x++)
+                    assertEquals("Type " + type + " read wrong pixel", image.getRGB(x, y), row[x]);
+            }
+        }
+    }
+
+    @Test
+    public void surfacesWriteLikeSetRGB() {
+        int[] values = MappedBlendTest.randomPixels(WIDTH, 3);
+        for(int type : TYPES) {
+            BufferedImage image = image(type, 4);
+            BufferedImage expected = image(type, 4);
+            ImageSurfaces.wrap(image).setRow(0, 7, WIDTH, values, 0);
+            expected.setRGB(0, 7, WIDTH, 1, values, 0, WIDTH);
+            assertSameImage("Type " + type + " wrote wrong pixels", expected, image);
+        }
+    }
+
+    @Test
+    public void intImagesAreWrappedWithoutCopying() {
+        BufferedImage image = image(BufferedImage.TYPE_INT_ARGB, 5);
+        PixelSurface surface = ImageSurfaces.wrap(image);
+        assertTrue(surface.hasArray());
+        assertEquals(PixelFormat.ARGB, surface.getFormat());
+        surface.setPixel(3, 4, 0x12345678);
+        assertEquals(0x12345678, image.getRGB(3, 4));
+        image.setRGB(5, 6, 0x0FEDCBA9);
+        assertEquals(0x0FEDCBA9, surface.getPixel(5, 6));
+
+        assertEquals(PixelFormat.XRGB, ImageSurfaces.wrap(image(BufferedImage.TYPE_INT_RGB, 6)).getFormat());
+        assertEquals(PixelFormat.XBGR, ImageSurfaces.wrap(image(BufferedImage.TYPE_INT_BGR, 6)).getFormat());
+    }
+
+    @Test
+    public void subimagesKeepTheirOffset() {
+        for(int type : TYPES) {
+            BufferedImage image = image(type, 7);
+            BufferedImage sub = image.getSubimage(11, 9, 30, 20);
+            PixelSurface surface = ImageSurfaces.wrap(sub);
+            assertEquals(30, surface.getWidth());
+            assertEquals(20, surface.getHeight());
+            for(int y = 0; y < 20; y++)
+                for(int x = 0; x < 30; x++)
+                    assertEquals("Type " + type + " read wrong pixel", sub.getRGB(x, y), surface.getPixel(x, y));
+            surface.setPixel(2, 3, 0xFF123456);
+            assertEquals(image.getRGB(13, 12), sub.getRGB(2, 3));
+            assertEquals("Type " + type + " wrote wrong pixel", image.getRGB(13, 12), surface.getPixel(2, 3));
+        }
+    }
+
+    @Test
+    public void blendsImagesInPlace() {
+        for(int type : TYPES) {
+            BufferedImage top = image(BufferedImage.TYPE_INT_ARGB, 8);
+            BufferedImage bottom = image(type, 9);
+            BufferedImage expected = image(type, 9);
+            int[] result = new int[WIDTH * HEIGHT];
+            BlendType.OVERLAY.blend(pixels(top), pixels(bottom), result, 0, result.length);
+            expected.setRGB(0, 0, WIDTH, HEIGHT, result, 0, WIDTH);
+
+            PixelSurface surface = ImageSurfaces.wrap(bottom);
+            BlendType.OVERLAY.blend(ImageSurfaces.wrap(top), surface, surface);
+            assertSameImage("Type " + type + " blended differently", expected, bottom);
+        }
+    }
+
+    @Test
+    public void gradesImagesInPlace() {
+        ColorGraph graph = new ColorGraph();
+        graph.getCurve(Channel.RED).addPoint(0.25f, 0.75f);
+        graph.getCurve(Channel.BLUE).addPoint(0.5f, 0.2f, 2.0f);
+        for(int type : TYPES) {
+            BufferedImage image = image(type, 10);
+            BufferedImage expected = image(type, 10);
+            int[] result = pixels(expected);
+            graph.apply(result, result, 0.8f);
+            expected.setRGB(0, 0, WIDTH, HEIGHT, result, 0, WIDTH);
+
+            PixelSurface surface = ImageSurfaces.wrap(image);
+            graph.apply(surface, surface, 0.8f);
+            assertSameImage("Type " + type + " graded differently", expected, image);
+        }
+    }
+
+    @Test
+    public void scansImages() {
+        for(int type : TYPES) {
+            BufferedImage image = image(type, 11);
+            PixelScanner scanner = new PixelScanner(0.2f);
+            List<PixelCloud> expected = new ArrayList<>(scanner.scan(pixels(image)));
+            List<PixelCloud> actual = new ArrayList<>(scanner.scan(ImageSurfaces.wrap(image)));
+            assertEquals("Type " + type + " scanned differently", expected.size(), actual.size());
+            for(int i = 0; i < expected.size(); i++)
+                assertEquals("Type " + type + " scanned differently", expected.get(i).size(), actual.get(i).size());
+        }
+    }
+
+    @Test
+    public void surfacesConvertToImages() {
+        BufferedImage image = image(BufferedImage.TYPE_4BYTE_ABGR, 12);
+        assertSameImage("Surface did not convert", image, ImageSurfaces.toImage(ImageSurfaces.wrap(image)));
+    }
+}
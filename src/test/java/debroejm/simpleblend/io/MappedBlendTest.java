@@ -0,0 +1,100 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.BlendEngine;
+import debroejm.simpleblend.BlendType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class MappedBlendTest {
+
+    static int[] randomPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for(int i = 0; i < length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    static Path write(Path directory, String name, int[] pixels, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4).order(order);
+        buffer.asIntBuffer().put(pixels);
+        return Files.write(directory.resolve(name), buffer.array());
+    }
+
+    static int[] read(Path path, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(order);
+        int[] pixels = new int[buffer.remaining() / 4];
+        buffer.asIntBuffer().get(pixels);
+        return pixels;
+    }
+
+    static void delete(Path directory) throws IOException {
+        try(Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void windowedBlendMatchesInMemoryBlend() throws IOException {
+        int[] top = randomPixels(10007, 91), bottom = randomPixels(10007, 92);
+        int[] expected = new int[top.length];
+        BlendType.OVERLAY.blend(top, bottom, expected, 0, top.length);
+
+        Path directory = Files.createTempDirectory("mapped-blend");
+        try {
+            Path topFile = write(directory, "top.raw", top, ByteOrder.BIG_ENDIAN);
+            Path bottomFile = write(directory, "bottom.raw", bottom, ByteOrder.BIG_ENDIAN);
+            Path output = directory.resolve("output.raw");
+            long pixels = new MappedBlend(BlendType.OVERLAY, 1000, null).blend(topFile, bottomFile, output);
+            assertEquals(top.length, pixels);
+            assertArrayEquals("Mapped blend did not match in-memory blend", expected, read(output, ByteOrder.BIG_ENDIAN));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void parallelLittleEndianBlendOverwritesInput() throws IOException {
+        int[] top = randomPixels(300000, 93), bottom = randomPixels(300000, 94);
+        int[] expected = new int[top.length];
+        BlendType.MULTIPLY.blend(top, bottom, expected, 0, top.length);
+
+        Path directory = Files.createTempDirectory("mapped-blend");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Path topFile = write(directory, "top.raw", top, ByteOrder.LITTLE_ENDIAN);
+            Path bottomFile = write(directory, "bottom.raw", bottom, ByteOrder.LITTLE_ENDIAN);
+            new MappedBlend(BlendType.MULTIPLY, 100000, new BlendEngine(pool), ByteOrder.LITTLE_ENDIAN)
+                    .blend(topFile, bottomFile, bottomFile);
+            assertArrayEquals("Mapped blend did not match in-memory blend", expected, read(bottomFile, ByteOrder.LITTLE_ENDIAN));
+        } finally {
+            pool.shutdown();
+            System.gc();
+            delete(directory);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedSizesAreRejected() throws IOException {
+        Path directory = Files.createTempDirectory("mapped-blend");
+        try {
+            Path topFile = write(directory, "top.raw", new int[4], ByteOrder.BIG_ENDIAN);
+            Path bottomFile = write(directory, "bottom.raw", new int[5], ByteOrder.BIG_ENDIAN);
+            new MappedBlend(BlendType.SCREEN).blend(topFile, bottomFile, directory.resolve("output.raw"));
+        } finally {
+            delete(directory);
+        }
+    }
+}
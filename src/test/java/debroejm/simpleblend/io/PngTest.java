@@ -0,0 +1,308 @@
+package debroejm.simpleblend.io;
+
+import debroejm.simpleblend.BlendType;
+import debroejm.simpleblend.Channel;
+import debroejm.simpleblend.curve.ColorGraph;
+import debroejm.simpleblend.curve.CompiledGraph;
+import debroejm.simpleblend.util.PixelCloud;
+import debroejm.simpleblend.util.PixelScanner;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class PngTest {
+
+    private static final int WIDTH = 123, HEIGHT = 77;
+
+    /**
+     * Random pixels with smooth runs, so every filter type gets picked.
+     */
+    static int[] imagePixels(int width, int height, long seed) {
+        int[] noise = MappedBlendTest.randomPixels(width * height, seed);
+        int[] pixels = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int i = y*width + x;
+                pixels[i] = (y / 8) % 2 == 0 ? noise[i] : (0xFF000000 | x*2 << 16 | y*3 << 8 | (x+y) & 0xFF);
+            }
+        }
+        return pixels;
+    }
+
+    static byte[] encode(int[] pixels, int width, int height, boolean alpha) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(PngWriter writer = new PngWriter(out, width, height, alpha)) {
+            for(int y = 0; y < height; y++)
+                writer.writeRow(pixels, y * width);
+        }
+        return out.toByteArray();
+    }
+
+    static int[] decode(byte[] png) throws IOException {
+        try(PngReader reader = new PngReader(new ByteArrayInputStream(png))) {
+            int[] pixels = new int[reader.getWidth() * reader.getHeight()];
+            for(int y = 0; y < reader.getHeight(); y++)
+                reader.readRow(pixels, y * reader.getWidth());
+            return pixels;
+        }
+    }
+
+    private static byte[] imageIO(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "png", out));
+        return out.toByteArray();
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    @Test
+    public void roundTripsPixels() throws IOException {
+        int[] pixels = imagePixels(WIDTH, HEIGHT, 1);
+        assertArrayEquals(pixels, decode(encode(pixels, WIDTH, HEIGHT, true)));
+
+        int[] opaque = pixels.clone();
+        for(int i = 0; i < opaque.length; i++)
+            opaque[i] |= 0xFF000000;
+        assertArrayEquals(opaque, decode(encode(pixels, WIDTH, HEIGHT, false)));
+    }
+
+    @Test
+    public void writesImagesImageIOCanRead() throws IOException {
+        int[] pixels = imagePixels(WIDTH, HEIGHT, 2);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encode(pixels, WIDTH, HEIGHT, true)));
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(HEIGHT, image.getHeight());
+        assertArrayEquals(pixels, pixels(image));
+    }
+
+    @Test
+    public void readsImagesImageIOWrites() throws IOException {
+        int[] types = {
+                BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_BYTE_INDEXED,
+                BufferedImage.TYPE_BYTE_BINARY
+        };
+        int[] pixels = imagePixels(WIDTH, HEIGHT, 3);
+        for(int type : types) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+            image.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+            int[] expected = pixels(image);
+            if(type == BufferedImage.TYPE_BYTE_GRAY) {
+                // getRGB treats gray as linear; PNG stores the gray samples as they are
+                for(int i = 0; i < expected.length; i++)
+                    expected[i] = 0xFF000000 | image.getRaster().getSample(i % WIDTH, i / WIDTH, 0) * 0x010101;
+            }
+            assertArrayEquals("Type " + type + " decoded differently", expected, decode(imageIO(image)));
+        }
+    }
+
+    @Test
+    public void rejectsCorruptImages() throws IOException {
+        byte[] png = encode(imagePixels(WIDTH, HEIGHT, 4), WIDTH, HEIGHT, true);
+        byte[] corrupt = png.clone();
+        corrupt[20] ^= 1;
+        try {
+            decode(corrupt);
+            fail("Corrupt header was accepted");
+        } catch(IOException expected) {}
+        try {
+            decode(Arrays.copyOf(png, png.length / 2));
+            fail("Truncated image was accepted");
+        } catch(IOException expected) {}
+        try {
+            decode(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 });
+            fail("Non-PNG data was accepted");
+        } catch(IOException expected) {}
+    }
+
+    @Test
+    public void writerChecksRowCount() throws IOException {
+        PngWriter writer = new PngWriter(new ByteArrayOutputStream(), 4, 2, true);
+        writer.writeRow(new int[4], 0);
+        try {
+            writer.finish();
+            fail("Finished an incomplete image");
+        } catch(IllegalStateException expected) {}
+        writer.writeRow(new int[4], 0);
+        try {
+            writer.writeRow(new int[4], 0);
+            fail("Wrote too many rows");
+        } catch(IllegalStateException expected) {}
+        writer.close();
+    }
+
+    @Test
+    public void pipelineBlendsLikeArrays() throws IOException {
+        int[] top = imagePixels(WIDTH, HEIGHT, 5);
+        int[] bottom = imagePixels(WIDTH, HEIGHT, 6);
+        int[] expected = new int[top.length];
+        BlendType.SCREEN.blend(top, bottom, expected, 0, expected.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngPipeline.blend(BlendType.SCREEN,
+                new ByteArrayInputStream(encode(top, WIDTH, HEIGHT, true)),
+                new ByteArrayInputStream(encode(bottom, WIDTH, HEIGHT, true)),
+                out);
+        assertArrayEquals(expected, decode(out.toByteArray()));
+    }
+
+    @Test
+    public void pipelineGradesLikeArrays() throws IOException {
+        ColorGraph graph = new ColorGraph();
+        graph.getCurve(Channel.GREEN).addPoint(0.3f, 0.6f);
+        CompiledGraph compiled = graph.freeze();
+        int[] pixels = imagePixels(WIDTH, HEIGHT, 7);
+        int[] expected = new int[pixels.length];
+        compiled.apply(pixels, expected, 0.5f);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngPipeline.apply(compiled, 0.5f, new ByteArrayInputStream(encode(pixels, WIDTH, HEIGHT, true)), out);
+        assertArrayEquals(expected, decode(out.toByteArray()));
+    }
+
+    @Test
+    public void pipelineScansLikeArrays() throws IOException {
+        int[] pixels = imagePixels(WIDTH, HEIGHT, 8);
+        PixelScanner scanner = new PixelScanner(0.15f);
+        List<PixelCloud> expected = new ArrayList<>(scanner.scan(pixels));
+        List<PixelCloud> actual = new ArrayList<>(
+                PngPipeline.scan(scanner, new ByteArrayInputStream(encode(pixels, WIDTH, HEIGHT, true))));
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).size(), actual.get(i).size());
+            assertEquals(expected.get(i).getAverageColor().getRGB(), actual.get(i).getAverageColor().getRGB());
+        }
+    }
+
+    @Test
+    public void pipelineReportsDecodingErrors() throws IOException {
+        byte[] png = encode(imagePixels(WIDTH, HEIGHT, 9), WIDTH, HEIGHT, true);
+        byte[] truncated = Arrays.copyOf(png, png.length - 200);
+        try {
+            PngPipeline.blend(BlendType.MULTIPLY,
+                    new ByteArrayInputStream(png), new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+            fail("Truncated image was accepted");
+        } catch(IOException expected) {}
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(name);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Rewrites a PNG image with all of its IDAT chunks joined into one, and an extra
+     * chunk inserted before the pixel data.
+     */
+    private static byte[] rechunk(byte[] png, String extraType, byte[] extra) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(png);
+        in.position(PngReader.SIGNATURE.length);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(PngReader.SIGNATURE);
+        while(in.hasRemaining()) {
+            byte[] data = new byte[in.getInt()];
+            byte[] type = new byte[4];
+            in.get(type);
+            in.get(data);
+            in.getInt();
+            String name = new String(type, StandardCharsets.US_ASCII);
+            if(name.equals("IDAT")) {
+                idat.write(data);
+                continue;
+            }
+            if(name.equals("IEND")) {
+                if(extraType != null)
+                    writeChunk(out, extraType, extra);
+                writeChunk(out, "IDAT", idat.toByteArray());
+            }
+            writeChunk(out, name, data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void readsOneLargeDataChunk() throws IOException {
+        int width = 600, height = 400;
+        int[] pixels = MappedBlendTest.randomPixels(width * height, 11);
+        byte[] png = encode(pixels, width, height, true);
+        byte[] joined = rechunk(png, null, null);
+        assertTrue("Image was not re-chunked", joined.length < png.length);
+        assertTrue("Pixel data fits in one writer chunk", joined.length > 4 * PngWriter.CHUNK_SIZE);
+        assertArrayEquals(pixels, decode(joined));
+
+        joined[joined.length - 20] ^= 1;
+        try {
+            decode(joined);
+            fail("Corrupt pixel data chunk was accepted");
+        } catch(IOException expected) {}
+    }
+
+    @Test
+    public void rejectsHugeChunkLengths() throws IOException {
+        byte[] png = rechunk(encode(imagePixels(WIDTH, HEIGHT, 12), WIDTH, HEIGHT, true), "tEXt", new byte[4]);
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        int at = PngReader.SIGNATURE.length;
+        while(buffer.getInt(at + 4) != ByteBuffer.wrap("tEXt".getBytes(StandardCharsets.US_ASCII)).getInt())
+            at += buffer.getInt(at) + 12;
+        buffer.putInt(at, Integer.MAX_VALUE);
+        try {
+            new PngReader(new ByteArrayInputStream(png)).close();
+            fail("Chunk longer than the limit was accepted");
+        } catch(IOException expected) {}
+    }
+
+    @Test
+    public void pipelineReportsEncodingErrors() throws IOException {
+        int width = 4096, height = 20;
+        byte[] top = encode(MappedBlendTest.randomPixels(width * height, 13), width, height, true);
+        byte[] bottom = encode(MappedBlendTest.randomPixels(width * height, 14), width, height, true);
+        for(int limit : new int[]{ 200 * 1024, 250 * 1024 }) {
+            OutputStream failing = new OutputStream() {
+                private int written = 0;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{ (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    written += len;
+                    if(written > limit)
+                        throw new IOException("Disk full");
+                }
+            };
+            try {
+                PngPipeline.blend(BlendType.MULTIPLY,
+                        new ByteArrayInputStream(top), new ByteArrayInputStream(bottom), failing);
+                fail("Failed write was not reported");
+            } catch(IOException expected) {}
+        }
+    }
+}
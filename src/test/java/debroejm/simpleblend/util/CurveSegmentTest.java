@@ -0,0 +1,42 @@
+package debroejm.simpleblend.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CurveSegmentTest {
+
+    @Test
+    public void specializedSegmentsMatchExponentialFunction() {
+        for(float exponential : new float[]{ 1.0f, 2.0f, 3.0f, 4.0f, 0.5f, 2.5f }) {
+            CurveSegment segment = CurveSegment.of(0.2f, 0.1f, 0.9f, 0.8f, exponential);
+            ExponentialFunction function = new ExponentialFunction(0.2f, 0.1f, 0.9f, 0.8f, exponential);
+            for(int i = 0; i <= 1000; i++) {
+                float x = i / 1000.0f;
+                assertEquals("Segment did not match ExponentialFunction",
+                        function.apply(Float.valueOf(x)), segment.apply(x), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void factoryPicksSpecializedSegments() {
+        assertTrue(CurveSegment.of(0.0f, 0.0f, 1.0f, 1.0f, 1.0f) instanceof LinearSegment);
+        assertTrue(CurveSegment.of(0.0f, 0.0f, 1.0f, 1.0f, 3.0f) instanceof PowerSegment);
+        assertTrue(CurveSegment.of(0.0f, 0.0f, 1.0f, 1.0f, 0.5f) instanceof ExponentialFunction);
+    }
+
+    @Test
+    public void batchApplyMatchesScalarApply() {
+        float[] in = new float[257];
+        for(int i = 0; i < in.length; i++)
+            in[i] = i / 256.0f;
+        for(float exponential : new float[]{ 1.0f, 2.0f, 0.75f }) {
+            CurveSegment segment = CurveSegment.of(0.1f, 0.3f, 0.7f, 0.6f, exponential);
+            float[] out = new float[in.length];
+            segment.apply(in, out);
+            for(int i = 0; i < in.length; i++)
+                assertEquals("Batch apply did not match scalar apply", segment.apply(in[i]), out[i], 0.0f);
+        }
+    }
+}
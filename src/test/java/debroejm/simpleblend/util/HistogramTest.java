@@ -0,0 +1,114 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Channel;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    static int[] randomPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for(int i = 0; i < length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    @Test
+    public void parallelScanMatchesSequential() {
+        int[] data = randomPixels(1000000, 31);
+        Histogram expected = Histogram.scan(data, 0, data.length);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Histogram actual = Histogram.scan(pool, data, 0, data.length, 0);
+            assertEquals("Parallel scan counted a different amount of pixels", expected.getTotal(), actual.getTotal());
+            for(Channel channel : Channel.values()) {
+                for(int i = 0; i < Histogram.BINS; i++) {
+                    assertEquals("Parallel scan count did not match sequential count",
+                            expected.getCount(channel, i), actual.getCount(channel, i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void subsampledPercentilesAreClose() {
+        int[] data = randomPixels(2000000, 32);
+        Histogram full = Histogram.scan(data, 0, data.length);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Histogram sampled = Histogram.scan(pool, data, 0, data.length, 100000);
+            assertTrue("Subsampled scan counted too many pixels", sampled.getTotal() <= 100000);
+            for(float fraction : new float[]{ 0.01f, 0.25f, 0.5f, 0.75f, 0.99f }) {
+                assertEquals("Subsampled percentile was not close to full percentile",
+                        full.percentile(Channel.GREEN, fraction), sampled.percentile(Channel.GREEN, fraction), 2);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void subsampledPercentilesHoldBoundOnPeriodicData() {
+        // Ramp that repeats with exactly the period of the sampled blocks
+        int length = 1000000, maxSamples = 10000, period = length / maxSamples;
+        int[] data = new int[length];
+        for(int i = 0; i < length; i++)
+            data[i] = 0xFF000000 | (i % period) * 255 / (period - 1) << 8;
+        Histogram full = Histogram.scan(data, 0, length);
+        double[] cumulative = new double[Histogram.BINS];
+        long sum = 0;
+        for(int i = 0; i < Histogram.BINS; i++) {
+            sum += full.getCount(Channel.GREEN, i);
+            cumulative[i] = (double) sum / full.getTotal();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for(long seed = 0; seed < 20; seed++) {
+                Histogram sampled = Histogram.scan(pool, data, 0, length, maxSamples, seed);
+                assertEquals(maxSamples, sampled.getTotal());
+                double eps = sampled.percentileError(0.001);
+                for(float fraction = 0.05f; fraction < 1.0f; fraction += 0.05f) {
+                    int value = sampled.percentile(Channel.GREEN, fraction);
+                    assertTrue("Sampled percentile was below the bound", cumulative[value] >= fraction - eps);
+                    assertTrue("Sampled percentile was above the bound",
+                            value == 0 || cumulative[value - 1] <= fraction + eps);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void subsampledScanIsReproducible() {
+        int[] data = randomPixels(500000, 33);
+        ForkJoinPool one = new ForkJoinPool(1), four = new ForkJoinPool(4);
+        try {
+            Histogram a = Histogram.scan(one, data, 0, data.length, 5000, 42);
+            Histogram b = Histogram.scan(four, data, 0, data.length, 5000, 42);
+            for(Channel channel : Channel.values()) {
+                for(int i = 0; i < Histogram.BINS; i++)
+                    assertEquals("Seeded scan depended on the pool", a.getCount(channel, i), b.getCount(channel, i));
+            }
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    public void transparentPixelsAreSkipped() {
+        Histogram histogram = Histogram.scan(new int[]{ 0x00FFFFFF, 0x80102030, 0 }, 0, 3);
+        assertEquals(1, histogram.getTotal());
+        assertEquals(1, histogram.getCount(Channel.RED, 0x10));
+        assertEquals(0x20, histogram.percentile(Channel.GREEN, 0.5f));
+    }
+}
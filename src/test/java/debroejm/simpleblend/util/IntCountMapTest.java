@@ -0,0 +1,40 @@
+package debroejm.simpleblend.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntCountMapTest {
+
+    @Test
+    public void countsMatchHashMap() {
+        Random random = new Random(51);
+        IntCountMap map = new IntCountMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for(int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000) * 0x01010101;
+            map.add(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+        assertEquals("Map found a different amount of keys", expected.size(), map.size());
+        for(int i = 0; i < map.size(); i++)
+            assertEquals("Map count did not match", (int) expected.get(map.getKey(i)), map.getCount(i));
+        assertEquals(0, map.get(0x12345678 | 1));
+    }
+
+    @Test
+    public void keysStayInFirstOccurrenceOrder() {
+        IntCountMap map = new IntCountMap(1);
+        int[] keys = { 7, -3, 0, 7, 1 << 31, -3, 42 };
+        map.add(keys, 0, keys.length);
+        assertEquals(5, map.size());
+        assertArrayEquals(new int[]{ 7, -3, 0, 1 << 31, 42 },
+                new int[]{ map.getKey(0), map.getKey(1), map.getKey(2), map.getKey(3), map.getKey(4) });
+        assertEquals(2, map.get(7));
+        assertEquals(2, map.get(-3));
+    }
+}
@@ -0,0 +1,80 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.BlendEngine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PaletteMapperTest {
+
+    static int bruteForceIndex(int[] palette, int pixel) {
+        int best = -1, bestDistance = Integer.MAX_VALUE;
+        for(int i = 0; i < palette.length; i++) {
+            int dr = (palette[i] >> 16 & 0xFF) - (pixel >> 16 & 0xFF);
+            int dg = (palette[i] >> 8 & 0xFF) - (pixel >> 8 & 0xFF);
+            int db = (palette[i] & 0xFF) - (pixel & 0xFF);
+            int distance = dr*dr + dg*dg + db*db;
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void mappingMatchesBruteForce() {
+        Random random = new Random(81);
+        for(int size : new int[]{ 1, 2, 16, 200 }) {
+            int[] palette = new int[size];
+            for(int i = 0; i < size; i++)
+                palette[i] = random.nextInt() & 0x00FFFFFF;
+            palette[size - 1] = palette[0];
+            PaletteMapper mapper = new PaletteMapper(palette);
+            for(int i = 0; i < 100000; i++) {
+                int pixel = random.nextInt();
+                int expected = bruteForceIndex(palette, pixel);
+                assertEquals("Mapper did not find the nearest palette color", expected, mapper.indexOf(pixel));
+                assertEquals(pixel & 0xFF000000 | palette[expected], mapper.map(pixel));
+            }
+        }
+    }
+
+    @Test
+    public void parallelRemapMatchesSequential() {
+        int[] palette = { 0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00, 0x0000FF, 0x808080 };
+        PaletteMapper mapper = new PaletteMapper(palette);
+        int[] data = HistogramTest.randomPixels(512 * 300, 82);
+        int[] expected = new int[data.length];
+        mapper.remap(data, expected);
+        int[] actual = new int[data.length];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            mapper.remap(new BlendEngine(pool, 1024, 0), data, 0, 512, actual, 0, 512, 512, 300);
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals("Parallel remap did not match sequential remap", expected, actual);
+    }
+
+    @Test
+    public void ditheringKeepsAverageColor() {
+        PaletteMapper mapper = new PaletteMapper(new int[]{ 0x000000, 0xFFFFFF });
+        int width = 64, height = 64;
+        int[] data = new int[width * height];
+        Arrays.fill(data, 0xFF404040);
+        int[] out = new int[data.length];
+        mapper.dither(data, 0, width, out, 0, width, width, height);
+        int white = 0;
+        for(int pixel : out) {
+            assertTrue("Dithered pixel was not a palette color", pixel == 0xFF000000 || pixel == 0xFFFFFFFF);
+            if(pixel == 0xFFFFFFFF)
+                white++;
+        }
+        assertEquals("Dithering did not keep the average color", 0x40 / 255.0, white / (double) out.length, 0.01);
+    }
+}
@@ -0,0 +1,61 @@
+package debroejm.simpleblend.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PaletteQuantizerTest {
+
+    @Test
+    public void paletteHasExactlyRequestedColors() {
+        int[] data = HistogramTest.randomPixels(100000, 71);
+        int opaque = 0;
+        for(int pixel : data)
+            if((pixel >>> 24) > 2)
+                opaque++;
+        for(int colors : new int[]{ 1, 2, 16, 256 }) {
+            List<PixelCloud> palette = new PaletteQuantizer(colors).quantize(data);
+            assertEquals("Palette did not have the requested amount of colors", colors, palette.size());
+            int total = 0;
+            for(int i = 0; i < palette.size(); i++) {
+                total += palette.get(i).size();
+                assertTrue("Palette was not ordered by size", i == 0 || palette.get(i-1).size() >= palette.get(i).size());
+            }
+            assertEquals("Palette lost pixels", opaque, total);
+        }
+    }
+
+    @Test
+    public void fewDistinctColorsAreKeptExactly() {
+        int[] colors = { 0xFF102030, 0xFFF0E0D0, 0xFF808080, 0x80FF0000 };
+        int[] data = new int[1000];
+        for(int i = 0; i < data.length; i++)
+            data[i] = colors[i % 7 % colors.length];
+        List<PixelCloud> palette = new PaletteQuantizer(8).quantize(data);
+        assertEquals("Palette did not keep each distinct color", colors.length, palette.size());
+        for(PixelCloud cloud : palette)
+            assertEquals("Palette color mixed distinct colors",
+                    cloud.getMinimumColor().getRGB(), cloud.getMaximumColor().getRGB());
+    }
+
+    @Test
+    public void parallelQuantizeMatchesSequential() {
+        int[] data = HistogramTest.randomPixels(1000000, 72);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<PixelCloud> expected = new PaletteQuantizer(32).quantize(data);
+            List<PixelCloud> actual = new PaletteQuantizer(32).quantize(pool, data);
+            assertEquals(expected.size(), actual.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertEquals("Parallel palette did not match", expected.get(i).size(), actual.get(i).size());
+                assertEquals("Parallel palette did not match",
+                        expected.get(i).getAverageColor().getRGB(), actual.get(i).getAverageColor().getRGB());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
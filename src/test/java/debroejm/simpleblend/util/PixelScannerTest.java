@@ -0,0 +1,238 @@
+package debroejm.simpleblend.util;
+
+import debroejm.simpleblend.Color;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PixelScannerTest {
+
+    static int[] noisyPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for(int i = 0; i < length; i++) {
+            int base = random.nextInt(8) * 32;
+            int r = base + random.nextInt(24), g = base + random.nextInt(24), b = random.nextInt(256);
+            pixels[i] = (random.nextInt(10) == 0 ? 0 : 0xFF000000) | r << 16 | g << 8 | b;
+        }
+        return pixels;
+    }
+
+    /**
+     * Reference scan, testing every pixel against every PixelCloud in creation order.
+     */
+    static List<PixelCloud> bruteForceScan(int[] data, float epsilon) {
+        List<PixelCloud> clouds = new ArrayList<>();
+        for(int pixel : data) {
+            Color color = Color.ofRGB(pixel);
+            if(color.getAlpha() < 0.01f)
+                continue;
+            PixelCloud target = null;
+            for(PixelCloud cloud : clouds) {
+                if(cloud.isSimilar(color, epsilon)) {
+                    target = cloud;
+                    break;
+                }
+            }
+            if(target == null) {
+                target = new PixelCloud();
+                clouds.add(target);
+            }
+            target.add(color);
+        }
+        return clouds;
+    }
+
+    @Test
+    public void indexedScanMatchesBruteForce() {
+        int[] data = noisyPixels(20000, 41);
+        for(float epsilon : new float[]{ 0.01f, 0.05f, 0.1f, 0.3f, 1.0f }) {
+            List<PixelCloud> expected = bruteForceScan(data, epsilon);
+            Collection<PixelCloud> actual = new PixelScanner(epsilon).scan(data);
+            assertEquals("Indexed scan found a different amount of clouds", expected.size(), actual.size());
+            int i = 0;
+            for(PixelCloud cloud : actual) {
+                PixelCloud other = expected.get(i++);
+                assertEquals("Indexed scan assigned pixels differently", other.size(), cloud.size());
+                assertEquals("Indexed scan assigned pixels differently",
+                        other.getAverageColor().getRGB(), cloud.getAverageColor().getRGB());
+            }
+        }
+    }
+
+    @Test
+    public void distinctScanMatchesScanForSeparatedColors() {
+        int[] colors = { 0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF, 0x00123456 };
+        Random random = new Random(42);
+        int[] data = new int[50000];
+        for(int i = 0; i < data.length; i++)
+            data[i] = colors[random.nextInt(colors.length)];
+        List<PixelCloud> expected = new ArrayList<>(new PixelScanner(0.1f).scan(data));
+        List<PixelCloud> actual = new ArrayList<>(new PixelScanner(0.1f).scanDistinct(data));
+        assertEquals("Distinct scan found a different amount of clouds", expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals("Distinct scan weighted a cloud differently", expected.get(i).size(), actual.get(i).size());
+            assertEquals("Distinct scan averaged a cloud differently",
+                    expected.get(i).getAverageColor().getRGB(), actual.get(i).getAverageColor().getRGB());
+        }
+    }
+
+    @Test
+    public void distinctScanCountsEveryOpaquePixel() {
+        int[] data = noisyPixels(20000, 43);
+        int opaque = 0;
+        for(int pixel : data)
+            if((pixel >>> 24) != 0)
+                opaque++;
+        int total = 0;
+        for(PixelCloud cloud : new PixelScanner(0.05f).scanDistinct(data))
+            total += cloud.size();
+        assertEquals("Distinct scan lost pixels", opaque, total);
+    }
+
+    @Test
+    public void recordedMembersMatchCloudSizes() {
+        int[] data = noisyPixels(20000, 44);
+        for(boolean distinct : new boolean[]{ false, true }) {
+            PixelScanner scanner = new PixelScanner(0.05f, true);
+            Collection<PixelCloud> clouds = distinct ? scanner.scanDistinct(data) : scanner.scan(data);
+            boolean[] seen = new boolean[data.length];
+            for(PixelCloud cloud : clouds) {
+                int[] members = cloud.getMembers();
+                assertEquals("Member count did not match cloud size", cloud.size(), members.length);
+                for(int i = 0; i < members.length; i++) {
+                    assertTrue("Members were not in ascending order", i == 0 || members[i-1] < members[i]);
+                    assertTrue("Pixel was a member of two clouds", !seen[members[i]]);
+                    seen[members[i]] = true;
+                }
+            }
+            for(int i = 0; i < data.length; i++)
+                assertEquals("Opaque pixel was not a member", (data[i] >>> 24) != 0, seen[i]);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void membersAreNotRecordedByDefault() {
+        PixelCloud cloud = new PixelCloud();
+        cloud.add(Color.ofRGB(0xFF102030));
+        cloud.getMembers();
+    }
+
+    @Test
+    public void parallelScanIsDeterministic() {
+        int[] data = noisyPixels(300000, 45);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(4);
+        try {
+            PixelScanner scanner = new PixelScanner(0.1f);
+            List<PixelCloud> expected = new ArrayList<>(scanner.scan(single, data));
+            List<PixelCloud> actual = new ArrayList<>(scanner.scan(many, data));
+            assertEquals("Parallel scan depended on the pool", expected.size(), actual.size());
+            int total = 0;
+            for(int i = 0; i < expected.size(); i++) {
+                assertEquals("Parallel scan depended on the pool", expected.get(i).size(), actual.get(i).size());
+                assertEquals("Parallel scan depended on the pool",
+                        expected.get(i).getAverageColor().getRGB(), actual.get(i).getAverageColor().getRGB());
+                total += actual.get(i).size();
+            }
+            int opaque = 0;
+            for(int pixel : data)
+                if((pixel >>> 24) != 0)
+                    opaque++;
+            assertEquals("Parallel scan lost pixels", opaque, total);
+            assertTrue("Parallel scan of no data found clouds", scanner.scan(many, new int[0]).isEmpty());
+        } finally {
+            single.shutdown();
+            many.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelScanOfOnePartitionMatchesScan() {
+        int[] data = noisyPixels(PixelScanner.PARTITION_SIZE, 46);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<PixelCloud> expected = new ArrayList<>(new PixelScanner(0.05f).scan(data));
+            List<PixelCloud> actual = new ArrayList<>(new PixelScanner(0.05f).scan(pool, data));
+            assertEquals(expected.size(), actual.size());
+            for(int i = 0; i < expected.size(); i++)
+                assertEquals(expected.get(i).size(), actual.get(i).size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void mergeCombinesStatistics() {
+        PixelCloud a = new PixelCloud(), b = new PixelCloud(), both = new PixelCloud();
+        int[] colors = { 0xFF102030, 0xFF203040, 0xFF304050, 0xFF405060, 0xFF506070 };
+        for(int i = 0; i < colors.length; i++) {
+            (i < 2 ? a : b).add(Color.ofRGB(colors[i]));
+            both.add(Color.ofRGB(colors[i]));
+        }
+        a.merge(b);
+        assertEquals(both.size(), a.size());
+        assertEquals(both.getMinimumColor().getRGB(), a.getMinimumColor().getRGB());
+        assertEquals(both.getMaximumColor().getRGB(), a.getMaximumColor().getRGB());
+        assertEquals(both.getAverageColor().getRGB(), a.getAverageColor().getRGB());
+    }
+
+    @Test
+    public void regionsSplitDisconnectedColors() {
+        int width = 10, height = 4;
+        int[] data = new int[width * height];
+        for(int i = 0; i < data.length; i++) {
+            int x = i % width;
+            data[i] = x < 3 || x >= 7 ? 0xFFFF0000 : 0xFF0000FF;
+        }
+        List<PixelCloud> regions = new ArrayList<>(new PixelScanner(0.1f).scanRegions(data, width, height));
+        assertEquals("Disconnected regions of the same color were joined", 3, regions.size());
+        assertEquals(12, regions.get(0).size());
+        assertArrayEquals(new int[]{ 0, 0 }, regions.get(0).getMinimumPosition());
+        assertArrayEquals(new int[]{ 2, 3 }, regions.get(0).getMaximumPosition());
+        assertArrayEquals(new float[]{ 1.0f, 1.5f }, regions.get(0).getCentroid(), 1e-6f);
+        assertArrayEquals(new int[]{ 7, 0 }, regions.get(2).getMinimumPosition());
+        assertArrayEquals(new int[]{ 9, 3 }, regions.get(2).getMaximumPosition());
+    }
+
+    @Test
+    public void regionsUniteWhenTheyMeet() {
+        // A U shape: both arms start as separate regions and meet on the bottom row
+        int width = 5, height = 4;
+        int[] data = new int[width * height];
+        for(int i = 0; i < data.length; i++) {
+            int x = i % width, y = i / width;
+            data[i] = x == 0 || x == 4 || y == 3 ? 0xFF00FF00 : 0xFFFFFFFF;
+        }
+        data[2] = 0;
+        PixelScanner scanner = new PixelScanner(0.1f, true);
+        List<PixelCloud> regions = new ArrayList<>(scanner.scanRegions(data, width, height));
+        assertEquals("Regions did not unite", 2, regions.size());
+        PixelCloud u = regions.get(0);
+        assertEquals(11, u.size());
+        assertEquals(11, u.getMembers().length);
+        assertArrayEquals(new int[]{ 0, 0 }, u.getMinimumPosition());
+        assertArrayEquals(new int[]{ 4, 3 }, u.getMaximumPosition());
+        assertEquals("Transparent pixel was not skipped", 8, regions.get(1).size());
+    }
+
+    @Test
+    public void cloudCountDoesNotOverflow() {
+        PixelCloud cloud = new PixelCloud();
+        cloud.add(Color.ofRGB(0.25f, 0.5f, 0.75f), Integer.MAX_VALUE);
+        cloud.add(Color.ofRGB(0.75f, 0.5f, 0.25f), Integer.MAX_VALUE);
+        PixelCloud other = new PixelCloud();
+        other.add(Color.ofRGB(0.5f, 0.5f, 0.5f), Integer.MAX_VALUE);
+        cloud.merge(other);
+        assertEquals(3L * Integer.MAX_VALUE, cloud.getCount());
+        assertEquals("Size did not saturate", Integer.MAX_VALUE, cloud.size());
+        assertEquals(0.5f, cloud.getAverageColor().getRed(), 0.01f);
+        assertTrue(cloud.compareTo(other) > 0);
+    }
+}
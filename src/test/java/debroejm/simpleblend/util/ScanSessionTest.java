@@ -0,0 +1,67 @@
+package debroejm.simpleblend.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanSessionTest {
+
+    static void assertSameClouds(List<PixelCloud> expected, List<PixelCloud> actual) {
+        assertEquals("Session found a different amount of clouds", expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals("Session grouped pixels differently", expected.get(i).size(), actual.get(i).size());
+            assertEquals("Session grouped pixels differently",
+                    expected.get(i).getAverageColor().getRGB(), actual.get(i).getAverageColor().getRGB());
+        }
+    }
+
+    @Test
+    public void chunkedSessionMatchesScan() {
+        int[] data = PixelScannerTest.noisyPixels(30000, 61);
+        PixelScanner scanner = new PixelScanner(0.05f, true);
+        List<PixelCloud> expected = new ArrayList<>(scanner.scan(data));
+
+        ScanSession session = scanner.newSession();
+        for(int offset = 0; offset < data.length; offset += 777)
+            session.add(data, offset, Math.min(777, data.length - offset));
+        List<PixelCloud> actual = new ArrayList<>(session.getClouds());
+
+        assertEquals(data.length, session.getPixelCount());
+        assertSameClouds(expected, actual);
+        for(int i = 0; i < expected.size(); i++)
+            assertArrayEquals("Session recorded different members", expected.get(i).getMembers(), actual.get(i).getMembers());
+    }
+
+    @Test
+    public void bufferSessionMatchesScan() {
+        int[] data = PixelScannerTest.noisyPixels(10000, 62);
+        PixelScanner scanner = new PixelScanner(0.1f);
+        List<PixelCloud> expected = new ArrayList<>(scanner.scan(data));
+
+        IntBuffer direct = ByteBuffer.allocateDirect(data.length * 4).asIntBuffer();
+        direct.put(data, 0, 6000).flip();
+        ScanSession session = scanner.newSession();
+        session.add(direct);
+        assertFalse("Session did not consume the buffer", direct.hasRemaining());
+        session.add(IntBuffer.wrap(data, 6000, data.length - 6000));
+
+        assertSameClouds(expected, new ArrayList<>(session.getClouds()));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        int[] data = PixelScannerTest.noisyPixels(5000, 63);
+        ScanSession session = new PixelScanner(0.1f).newSession();
+        session.add(data);
+        session.reset();
+        assertTrue(session.getClouds().isEmpty());
+        assertEquals(0, session.getPixelCount());
+        session.add(data);
+        assertSameClouds(new ArrayList<>(new PixelScanner(0.1f).scan(data)), new ArrayList<>(session.getClouds()));
+    }
+}